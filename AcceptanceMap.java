@@ -0,0 +1,263 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Класс AcceptanceMap — карта приемлемости видов: плоскость смещений [-OFFSET_LIMIT, OFFSET_LIMIT]^2 разбита
+ * на сетку ячеек, и для каждой ячейки хранится, сколько видов с центром в ней прошло и не прошло проверку разнообразия.
+ * Новые виды берутся из ячеек с вероятностью, пропорциональной апостериорному среднему доли принятых видов
+ * при априорном Beta(PRIOR_WEIGHT * p, PRIOR_WEIGHT * (1 - p)), где p — доля принятых видов по всей карте:
+ * неизвестная ячейка весит как средняя, а одна удача поднимает вес ячейки намного выше среднего.
+ * Внутри ячейки вид выбирается равномерно, ZOOM и MAX_ITER — как обычно (ViewSampler).
+ * Доля exploration видов выбирается равномерно по всей плоскости, чтобы энтропия ключей не схлопывалась
+ * к нескольким удачным ячейкам, а карта продолжала уточняться. Карта сохраняется в файл между запусками.
+ *
+ * Кроме счетчиков ячеек карта хранит последние MAX_OBSERVATIONS проверенных видов целиком (offsetX, offsetY, ZOOM,
+ * MAX_ITER и результат): выбор пока зависит только от ячейки, но по этим записям карту можно будет
+ * стратифицировать по масштабу и количеству итераций.
+ */
+public class AcceptanceMap {
+    public static final int DEFAULT_GRID = 64; // Количество ячеек по каждой оси по умолчанию
+    public static final String DEFAULT_FILE = "acceptance.map"; // Файл карты по умолчанию
+    public static final int MAX_OBSERVATIONS = 100_000; // Количество последних видов, хранимых целиком
+    private static final int MAGIC_V1 = 0x4D415031; // "MAP1": только счетчики ячеек
+    private static final int MAGIC = 0x4D415032; // "MAP2": счетчики ячеек и последние виды
+    private static final double PRIOR_WEIGHT = 2; // Вес априорного распределения в наблюдениях
+
+    private final int grid; // Количество ячеек по каждой оси
+    private final int[] accepted; // Принятые виды по ячейкам
+    private final int[] rejected; // Отклоненные виды по ячейкам
+    private final ViewSampler base; // Выбор ZOOM, MAX_ITER и равномерных видов
+    private final Random random; // Источник случайных чисел для выбора ячейки
+    private double exploration = 0.2; // Доля видов, выбираемых равномерно
+    private double[] cumulative; // Накопленные веса ячеек, null после изменения карты
+
+    private final long[] attempts = new long[2]; // Попытки по источникам: 0 — равномерный, 1 — по карте
+    private final long[] keys = new long[2]; // Принятые ключи по источникам
+    private final ArrayDeque<Observation> observations = new ArrayDeque<>(); // Последние проверенные виды
+
+    /**
+     * Вид, выбранный картой.
+     */
+    public static class Sample {
+        public final MandelbrotParams params; // Параметры кадра
+        public final boolean explored; // true, если вид выбран равномерно, а не по карте
+
+        Sample(MandelbrotParams params, boolean explored) {
+            this.params = params;
+            this.explored = explored;
+        }
+    }
+
+    /**
+     * Проверенный вид: параметры, с которыми он рендерился, и результат проверки.
+     */
+    public static class Observation {
+        public final double offsetX; // Смещение по оси X
+        public final double offsetY; // Смещение по оси Y
+        public final double ZOOM; // Уровень масштабирования
+        public final int MAX_ITER; // Максимальное количество итераций
+        public final boolean valid; // true, если вид прошел проверку разнообразия
+
+        Observation(double offsetX, double offsetY, double ZOOM, int MAX_ITER, boolean valid) {
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.ZOOM = ZOOM;
+            this.MAX_ITER = MAX_ITER;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * Создает пустую карту.
+     *
+     * @param grid Количество ячеек по каждой оси.
+     * @param random Источник случайных чисел.
+     */
+    public AcceptanceMap(int grid, Random random) {
+        this.grid = grid;
+        this.accepted = new int[grid * grid];
+        this.rejected = new int[grid * grid];
+        this.random = random;
+        this.base = new ViewSampler(random);
+    }
+
+    /**
+     * Загружает карту из файла или создает пустую, если файла нет. Файлы старого формата без видов тоже читаются.
+     *
+     * @param file Файл карты.
+     * @return Карта приемлемости.
+     * @throws IOException Если файл поврежден или не читается.
+     */
+    public static AcceptanceMap load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new AcceptanceMap(DEFAULT_GRID, new Random());
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                throw new IOException("Файл " + file + " не является картой приемлемости");
+            }
+            AcceptanceMap map = new AcceptanceMap(in.readInt(), new Random());
+            for (int i = 0; i < map.accepted.length; i++) {
+                map.accepted[i] = in.readInt();
+                map.rejected[i] = in.readInt();
+            }
+            if (magic == MAGIC) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    map.remember(new Observation(in.readDouble(), in.readDouble(), in.readDouble(), in.readInt(),
+                            in.readBoolean()));
+                }
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Сохраняет карту: сначала во временный файл, затем атомарно переносит его на место старого.
+     *
+     * @param file Файл карты.
+     * @throws IOException Если файл не удалось записать.
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(grid);
+            for (int i = 0; i < accepted.length; i++) {
+                out.writeInt(accepted[i]);
+                out.writeInt(rejected[i]);
+            }
+            out.writeInt(observations.size());
+            for (Observation observation : observations) {
+                out.writeDouble(observation.offsetX);
+                out.writeDouble(observation.offsetY);
+                out.writeDouble(observation.ZOOM);
+                out.writeInt(observation.MAX_ITER);
+                out.writeBoolean(observation.valid);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Выбирает следующий вид.
+     *
+     * @param width Ширина изображения.
+     * @param height Высота изображения.
+     * @return Вид и источник, из которого он выбран.
+     */
+    public synchronized Sample next(int width, int height) {
+        MandelbrotParams params = base.next(width, height);
+        boolean explored = random.nextDouble() < exploration;
+        if (!explored) {
+            int cell = pickCell();
+            double size = 2 * ViewSampler.OFFSET_LIMIT / grid;
+            double offsetX = -ViewSampler.OFFSET_LIMIT + (cell % grid + random.nextDouble()) * size;
+            double offsetY = -ViewSampler.OFFSET_LIMIT + (cell / grid + random.nextDouble()) * size;
+            params = new MandelbrotParams(width, height, params.ZOOM, params.MAX_ITER, offsetX, offsetY);
+        }
+        attempts[explored ? 0 : 1]++;
+        return new Sample(params, explored);
+    }
+
+    /**
+     * Запоминает результат проверки вида.
+     *
+     * @param sample Вид, выбранный картой.
+     * @param params Параметры, с которыми вид рендерился (ZOOM и MAX_ITER могут отличаться от выбранных картой).
+     * @param valid true, если вид прошел проверку разнообразия.
+     */
+    public synchronized void record(Sample sample, MandelbrotParams params, boolean valid) {
+        remember(new Observation(params.offsetX, params.offsetY, params.ZOOM, params.MAX_ITER, valid));
+        int cell = cellOf(sample.params);
+        if (valid) {
+            accepted[cell]++;
+            keys[sample.explored ? 0 : 1]++;
+        } else {
+            rejected[cell]++;
+        }
+        cumulative = null;
+    }
+
+    /**
+     * Возвращает последние проверенные виды, от старых к новым.
+     *
+     * @return Копия списка видов.
+     */
+    public synchronized List<Observation> getObservations() {
+        return new ArrayList<>(observations);
+    }
+
+    public synchronized void setExploration(double exploration) {
+        this.exploration = exploration;
+    }
+
+    /**
+     * Выводит в консоль количество попыток на ключ для равномерного выбора и для выбора по карте.
+     */
+    public synchronized void printReport() {
+        System.out.println("Попыток на ключ: равномерно " + perKey(0) + ", по карте " + perKey(1));
+        if (keys[0] > 0 && keys[1] > 0) {
+            System.out.printf("Ускорение выбора по карте: %.2fx%n",
+                    ((double) attempts[0] / keys[0]) / ((double) attempts[1] / keys[1]));
+        }
+    }
+
+    private String perKey(int source) {
+        String ratio = keys[source] == 0 ? "—" : String.format("%.1f", (double) attempts[source] / keys[source]);
+        return ratio + " (" + attempts[source] + "/" + keys[source] + ")";
+    }
+
+    private void remember(Observation observation) {
+        if (observations.size() == MAX_OBSERVATIONS) {
+            observations.removeFirst();
+        }
+        observations.addLast(observation);
+    }
+
+    private int cellOf(MandelbrotParams params) {
+        double size = 2 * ViewSampler.OFFSET_LIMIT / grid;
+        int x = (int) Math.floor((params.offsetX + ViewSampler.OFFSET_LIMIT) / size);
+        int y = (int) Math.floor((params.offsetY + ViewSampler.OFFSET_LIMIT) / size);
+        return Math.min(grid - 1, Math.max(0, y)) * grid + Math.min(grid - 1, Math.max(0, x));
+    }
+
+    private int pickCell() {
+        if (cumulative == null) {
+            long totalAccepted = 0;
+            long total = 0;
+            for (int i = 0; i < accepted.length; i++) {
+                totalAccepted += accepted[i];
+                total += accepted[i] + rejected[i];
+            }
+            double prior = PRIOR_WEIGHT * (totalAccepted + 1.0) / (total + 2.0);
+            cumulative = new double[accepted.length];
+            double sum = 0;
+            for (int i = 0; i < accepted.length; i++) {
+                sum += (accepted[i] + prior) / (accepted[i] + rejected[i] + PRIOR_WEIGHT);
+                cumulative[i] = sum;
+            }
+        }
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
\ No newline at end of file
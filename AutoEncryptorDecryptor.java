@@ -1,11 +1,15 @@
 import Model.ImageDecrypt;
 import Model.ImageEncrypt;
-import Model.Mandelbrot;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
 
 public class AutoEncryptorDecryptor {
 
@@ -13,6 +17,11 @@ public class AutoEncryptorDecryptor {
     private static final String ENCRYPTED_FOLDER = "encrypted/"; // Папка для сохранения зашифрованных изображений
     private static final String DECRYPTED_FOLDER = "decrypted/"; // Папка для сохранения расшифрованных изображений
     private static final String MANDELBROT_FOLDER = "mandelbrot/"; // Папка для сохранения изображений Мандельброта
+    private static final String KEY_CACHE_FOLDER = MANDELBROT_FOLDER + "cache/"; // Папка кэша ключей, выводимых из зерна
+    private static final int KEY_CACHE_MEMORY = 16; // Количество ключей в памяти
+    private static final long KEY_CACHE_DISK_BYTES = 512L * 1024 * 1024; // Допустимый размер кэша ключей на диске
+    private static KeyCache keyCache; // Кэш ключей, создается при первом использовании
+    private static final SecureRandom SEED_RANDOM = new SecureRandom(); // Источник непредсказуемых зерен ключей
 
     public static void main(String[] args) {
         // Создаем папки, если их нет
@@ -28,10 +37,16 @@ public class AutoEncryptorDecryptor {
             String mandelbrotPath = MANDELBROT_FOLDER + "mandelbrot_" + i + ".png";
             String encryptedImagePath = ENCRYPTED_FOLDER + i + "_encrypted.png";
             String decryptedImagePath = DECRYPTED_FOLDER + i + "_decrypted.png";
+            String seedPath = MANDELBROT_FOLDER + "mandelbrot_" + i + ".seed"; // Зерно хранится вместе с ключами
 
             // Загружаем или генерируем изображение Мандельброта
             long encryptionStartTime = System.nanoTime(); // Начало шифрования
-            BufferedImage mandelbrotImage = loadOrGenerateMandelbrot(mandelbrotPath);
+            Long seed = loadOrCreateSeed(seedPath);
+            if (seed == null) {
+                System.err.println("Ошибка чтения или сохранения зерна ключа: " + seedPath);
+                continue;
+            }
+            BufferedImage mandelbrotImage = loadOrGenerateMandelbrot(seed, mandelbrotPath);
             if (mandelbrotImage == null) {
                 System.err.println("Ошибка генерации или загрузки изображения Мандельброта: " + mandelbrotPath);
                 continue;
@@ -84,6 +99,9 @@ public class AutoEncryptorDecryptor {
         System.out.println("Среднее время шифрования: " + (totalEncryptionTime / imageCount) / 1_000_000 + " мс");
         System.out.println("Общее время расшифрования: " + totalDecryptionTime / 1_000_000 + " мс");
         System.out.println("Среднее время расшифрования: " + (totalDecryptionTime / imageCount) / 1_000_000 + " мс");
+        if (keyCache != null) {
+            keyCache.printReport();
+        }
     }
 
     /**
@@ -104,7 +122,7 @@ public class AutoEncryptorDecryptor {
      */
     private static BufferedImage loadImage(String path) {
         try {
-            return ImageIO.read(new File(path));
+            return KeyImage.readImage(Paths.get(path));
         } catch (IOException e) {
             System.err.println("Ошибка загрузки изображения: " + e.getMessage());
             return null;
@@ -125,32 +143,87 @@ public class AutoEncryptorDecryptor {
         }
     }
 
+    /**
+     * Читает зерно ключа из папки ключей или создает новое.
+     * Зерно полностью определяет ключ, поэтому хранится вместе с ключевыми изображениями, а не рядом с зашифрованными.
+     * Новое зерно берется из SecureRandom, чтобы ключ нельзя было угадать по номеру изображения, и сразу
+     * записывается в файл вместе с версией вывода KeyCache.DERIVATION_VERSION: без него зашифрованное изображение
+     * не расшифровать, а зерно другой версии дало бы другой ключ.
+     *
+     * @param path Путь к файлу зерна.
+     * @return Зерно ключа или null, если произошла ошибка.
+     */
+    private static Long loadOrCreateSeed(String path) {
+        Path seedPath = Paths.get(path);
+        try {
+            if (Files.exists(seedPath)) {
+                String[] parts = new String(Files.readAllBytes(seedPath), StandardCharsets.US_ASCII).trim().split(" ");
+                int version = Integer.parseInt(parts[0]);
+                if (parts.length != 2 || version != KeyCache.DERIVATION_VERSION) {
+                    System.err.println("Зерно " + path + " выведено версией " + version + ", текущая версия "
+                            + KeyCache.DERIVATION_VERSION);
+                    return null;
+                }
+                return Long.parseLong(parts[1]);
+            }
+            long seed = SEED_RANDOM.nextLong();
+            Files.write(seedPath, (KeyCache.DERIVATION_VERSION + " " + seed).getBytes(StandardCharsets.US_ASCII));
+            return seed;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ошибка зерна ключа: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Загружает или генерирует изображение Мандельброта.
+     * Если рядом с PNG лежит контейнер .mbk, читается он: отображение в память вместо декодирования PNG.
+     * Существующий PNG при первой загрузке импортируется в контейнер.
+     * Если файла нет, ключ выводится из зерна через кэш ключей и повторно не рендерится.
      *
+     * @param seed Зерно ключа.
      * @param mandelbrotPath Путь к изображению Мандельброта.
      * @return Изображение Мандельброта или null, если произошла ошибка.
      */
-    private static BufferedImage loadOrGenerateMandelbrot(String mandelbrotPath) {
+    private static BufferedImage loadOrGenerateMandelbrot(long seed, String mandelbrotPath) {
         File mandelbrotFile = new File(mandelbrotPath);
-        if (mandelbrotFile.exists()) {
-            // Загружаем существующее изображение Мандельброта
-            return loadImage(mandelbrotPath);
+        Path rawPath = Paths.get(mandelbrotPath.replaceFirst("\\.png$", "") + "." + KeyImage.EXTENSION);
+        if (rawPath.toFile().exists()) {
+            return loadImage(rawPath.toString());
+        } else if (mandelbrotFile.exists()) {
+            // Загружаем существующее изображение Мандельброта и сохраняем его в контейнер для следующих запусков
+            try {
+                KeyImage.importPng(mandelbrotFile.toPath(), rawPath);
+                return loadImage(rawPath.toString());
+            } catch (IOException e) {
+                System.err.println("Ошибка импорта изображения в контейнер: " + e.getMessage());
+                return loadImage(mandelbrotPath);
+            }
         } else {
-            // Генерируем новое изображение Мандельброта
-            Mandelbrot mandelbrot = new Mandelbrot();
-            BufferedImage mandelbrotImage = mandelbrot.generateImage();
-            if (mandelbrotImage != null) {
-                // Сохраняем сгенерированное изображение
-                saveImage(mandelbrotImage, mandelbrotPath);
-                return mandelbrotImage;
-            } else {
-                System.err.println("Ошибка генерации изображения Мандельброта.");
+            // Выводим ключ из зерна; кэш рендерит его только при первом обращении
+            try {
+                return getKeyCache().get(seed);
+            } catch (IOException e) {
+                System.err.println("Ошибка генерации изображения Мандельброта: " + e.getMessage());
                 return null;
             }
         }
     }
 
+    /**
+     * Возвращает кэш ключей, создавая его при первом использовании.
+     *
+     * @return Кэш ключей.
+     * @throws IOException Если папку кэша не удалось создать.
+     */
+    private static synchronized KeyCache getKeyCache() throws IOException {
+        if (keyCache == null) {
+            keyCache = new KeyCache(Paths.get(KEY_CACHE_FOLDER), KEY_CACHE_MEMORY, KEY_CACHE_DISK_BYTES,
+                    RenderScheduler.getShared(), new InteriorCullingKernel());
+        }
+        return keyCache;
+    }
+
     /**
      * Шифрует изображение с использованием изображения Мандельброта.
      *
@@ -0,0 +1,210 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Класс BitPlaneAnalyzer выполняет побитовый дифференциальный анализ пар изображений. Пиксели (0xAARRGGBB)
+ * транспонируются в битовые плоскости: для каждой группы из 64 пикселей хранится 32 слова long, в слове p бит k —
+ * это бит p пикселя k группы. Тогда одно XOR и Long.bitCount сравнивают 64 пикселя в одной плоскости, а OR
+ * результатов XOR по всем плоскостям дает различающиеся пиксели группы. За один проход получаются NFC, NPCR и
+ * доли различающихся битов для каждой плоскости и каждого канала (лавинный эффект: у хорошего шифра все доли
+ * близки к 50%).
+ *
+ * Транспонирование выполняется один раз на изображение, поэтому при сравнении одного изображения со многими
+ * упакованный вид стоит хранить (см. pack).
+ */
+public class BitPlaneAnalyzer {
+    public static final int PLANES = 32; // Битовых плоскостей в пикселе 0xAARRGGBB
+    private static final String[] CHANNELS = {"B", "G", "R", "A"}; // Каналы по возрастанию старшинства битов
+
+    /**
+     * Изображение, упакованное по битовым плоскостям.
+     *
+     * @param pixels Количество пикселей.
+     * @param words Слова групп по 64 пикселя: слово плоскости p группы g имеет номер g * PLANES + p.
+     */
+    public record Planes(int pixels, long[] words) {
+    }
+
+    /**
+     * Накопленная статистика различий для одной или нескольких пар.
+     */
+    public static class Report {
+        private long pairs; // Количество сравненных пар
+        private long pixels; // Количество сравненных пикселей по всем парам
+        private long diffPixels; // Количество различающихся пикселей
+        private final long[] planeDiffs = new long[PLANES]; // Различающиеся биты по плоскостям
+
+        /**
+         * Добавляет статистику другого отчета.
+         *
+         * @param other Отчет по другим парам.
+         */
+        public void merge(Report other) {
+            pairs += other.pairs;
+            pixels += other.pixels;
+            diffPixels += other.diffPixels;
+            for (int p = 0; p < PLANES; p++) {
+                planeDiffs[p] += other.planeDiffs[p];
+            }
+        }
+
+        public long getPairs() {
+            return pairs;
+        }
+
+        /**
+         * @return NFC: процент различающихся битов по всем 32 плоскостям.
+         */
+        public double nfc() {
+            long bits = 0;
+            for (long diffs : planeDiffs) {
+                bits += diffs;
+            }
+            return (double) bits / (PLANES * (double) pixels) * 100;
+        }
+
+        /**
+         * @return NPCR: процент пикселей, различающихся хотя бы в одном бите.
+         */
+        public double npcr() {
+            return (double) diffPixels / pixels * 100;
+        }
+
+        /**
+         * @param plane Номер бита в пикселе 0xAARRGGBB (0 — младший бит синего канала).
+         * @return Процент пикселей, у которых различается бит plane.
+         */
+        public double planeRate(int plane) {
+            return (double) planeDiffs[plane] / pixels * 100;
+        }
+
+        /**
+         * @param channel Номер канала: 0 — синий, 1 — зеленый, 2 — красный, 3 — альфа.
+         * @return Процент различающихся битов канала.
+         */
+        public double channelRate(int channel) {
+            long bits = 0;
+            for (int p = channel * 8; p < channel * 8 + 8; p++) {
+                bits += planeDiffs[p];
+            }
+            return (double) bits / (8 * (double) pixels) * 100;
+        }
+
+        /**
+         * Выводит в консоль NFC, NPCR, доли по каналам и таблицу долей по плоскостям цвета.
+         */
+        public void printReport() {
+            if (pixels == 0) {
+                return;
+            }
+            System.out.printf("Лавинный эффект: %d пар, NFC %.4f%%, NPCR %.4f%%%n", pairs, nfc(), npcr());
+            System.out.printf("  По каналам: R %.4f%%, G %.4f%%, B %.4f%%, A %.4f%%%n",
+                    channelRate(2), channelRate(1), channelRate(0), channelRate(3));
+            double maxDeviation = 0;
+            for (int channel = 2; channel >= 0; channel--) {
+                StringBuilder line = new StringBuilder("  " + CHANNELS[channel] + " (бит 7..0):");
+                for (int bit = 7; bit >= 0; bit--) {
+                    double rate = planeRate(channel * 8 + bit);
+                    line.append(String.format(" %.2f", rate));
+                    maxDeviation = Math.max(maxDeviation, Math.abs(rate - 50));
+                }
+                System.out.println(line);
+            }
+            System.out.printf("  Наибольшее отклонение плоскости цвета от 50%%: %.4f%%%n", maxDeviation);
+        }
+    }
+
+    /**
+     * Упаковывает изображение по битовым плоскостям.
+     *
+     * @param image Изображение.
+     * @return Упакованное изображение.
+     */
+    public static Planes pack(BufferedImage image) {
+        return pack(PairMatrix.plane(image));
+    }
+
+    /**
+     * Упаковывает пиксели по битовым плоскостям.
+     *
+     * @param pixels Пиксели в формате getRGB.
+     * @return Упакованное изображение.
+     */
+    public static Planes pack(int[] pixels) {
+        int groups = (pixels.length + 63) / 64;
+        long[] words = new long[groups * PLANES];
+        int[] low = new int[32]; // Пиксели 0..31 группы, после транспонирования — их плоскости
+        int[] high = new int[32]; // Пиксели 32..63 группы
+        for (int g = 0; g < groups; g++) {
+            int from = g * 64;
+            for (int k = 0; k < 32; k++) {
+                // Пиксели кладутся в обратном порядке, тогда после transpose32 элемент 31 - p — это плоскость p;
+                // хвост последней группы заполняется нулями и одинаков у обоих изображений
+                low[31 - k] = from + k < pixels.length ? pixels[from + k] : 0;
+                high[31 - k] = from + 32 + k < pixels.length ? pixels[from + 32 + k] : 0;
+            }
+            transpose32(low);
+            transpose32(high);
+            for (int p = 0; p < PLANES; p++) {
+                words[g * PLANES + p] = (low[31 - p] & 0xFFFFFFFFL) | ((long) high[31 - p] << 32);
+            }
+        }
+        return new Planes(pixels.length, words);
+    }
+
+    /**
+     * Транспонирует битовую матрицу 32x32 (Уоррен, «Алгоритмические трюки для программистов», 7.3): бит 31 - j
+     * элемента i меняется местами с битом 31 - i элемента j. Пять проходов обменов блоков по 16, 8, 4, 2 и 1 бит.
+     */
+    private static void transpose32(int[] a) {
+        int mask = 0x0000FFFF;
+        for (int j = 16; j != 0; j >>>= 1, mask ^= mask << j) {
+            for (int k = 0; k < 32; k = ((k | j) + 1) & ~j) {
+                int t = (a[k] ^ (a[k | j] >>> j)) & mask;
+                a[k] ^= t;
+                a[k | j] ^= t << j;
+            }
+        }
+    }
+
+    /**
+     * Сравнивает два упакованных изображения одного размера.
+     *
+     * @param a Первое изображение.
+     * @param b Второе изображение.
+     * @return Отчет по одной паре.
+     */
+    public static Report compare(Planes a, Planes b) {
+        if (a.pixels() != b.pixels()) {
+            throw new IllegalArgumentException("Изображения должны быть одного размера");
+        }
+        long[] x = a.words();
+        long[] y = b.words();
+        Report report = new Report();
+        long diffPixels = 0;
+        long[] planeDiffs = report.planeDiffs;
+        for (int base = 0; base < x.length; base += PLANES) {
+            long any = 0; // Пиксели группы, различающиеся хотя бы в одной плоскости
+            for (int p = 0; p < PLANES; p++) {
+                long diff = x[base + p] ^ y[base + p];
+                planeDiffs[p] += Long.bitCount(diff);
+                any |= diff;
+            }
+            diffPixels += Long.bitCount(any);
+        }
+        report.pairs = 1;
+        report.pixels = a.pixels();
+        report.diffPixels = diffPixels;
+        return report;
+    }
+
+    /**
+     * Сравнивает два изображения одного размера.
+     *
+     * @param img1 Первое изображение.
+     * @param img2 Второе изображение.
+     * @return Отчет по одной паре.
+     */
+    public static Report compare(BufferedImage img1, BufferedImage img2) {
+        return compare(pack(img1), pack(img2));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,255 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Класс DeepZoomRenderer рендерит кадры на масштабах, недоступных арифметике double (1e13 и глубже),
+ * методом теории возмущений. Одна опорная орбита вычисляется в произвольной точности (ReferenceOrbit),
+ * а для каждого пикселя в double итерируется только отклонение dz от нее:
+ * dz_{n+1} = 2 Z_n dz_n + dz_n^2 + dc.
+ *
+ * Первые итерации пропускаются по ряду (series approximation). Пиксели, для которых отклонение теряет точность
+ * (|Z_n + dz_n| много меньше |Z_n|) или опорная орбита покинула круг раньше пикселя, помечаются как сбойные
+ * и пересчитываются с новой опорной точкой, выбранной среди них. Если сбойные пиксели остаются после
+ * MAX_REFERENCES опорных точек, каждый из них считается отдельно в произвольной точности.
+ */
+public class DeepZoomRenderer {
+    private static final double GLITCH_TOLERANCE = 1e-6; // Порог |z|^2 / |Z|^2, ниже которого пиксель считается сбойным
+    private static final double SERIES_TOLERANCE = 1e-3; // Допустимое отношение третьего члена ряда ко второму
+    private static final int MAX_REFERENCES = 16; // Максимальное количество опорных орбит на кадр
+    private static final int GLITCHED = -1; // Отметка сбойного пикселя
+    private static final int DESCENT_STEP = 16; // Во сколько раз увеличивается масштаб за один шаг спуска
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считаются пиксели
+    private boolean useSeries = true; // Пропускать ли первые итерации по ряду
+
+    private volatile int lastReferenceCount; // Количество опорных орбит в последнем кадре
+    private volatile int lastSeriesSkip; // Количество итераций, пропущенных по ряду в последнем кадре
+
+    /**
+     * Конструктор класса DeepZoomRenderer.
+     *
+     * @param scheduler Планировщик рендеринга.
+     */
+    public DeepZoomRenderer(RenderScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setUseSeries(boolean useSeries) {
+        this.useSeries = useSeries;
+    }
+
+    public int getLastReferenceCount() {
+        return lastReferenceCount;
+    }
+
+    public int getLastSeriesSkip() {
+        return lastSeriesSkip;
+    }
+
+    /**
+     * Запускает рендеринг кадра и сразу возвращает управление.
+     *
+     * @param field Поле итераций для записи результатов (смещения в его параметрах используются только для справки).
+     * @param offsetX Точное смещение по оси X.
+     * @param offsetY Точное смещение по оси Y.
+     * @return Future, завершающийся этим же полем после рендеринга.
+     */
+    public CompletableFuture<IterationField> render(IterationField field, BigDecimal offsetX, BigDecimal offsetY) {
+        return CompletableFuture.supplyAsync(() -> {
+            int[] counts = computeCounts(field.getParams(), offsetX, offsetY, null);
+            short[] values = field.getCounts();
+            int[] histogram = new int[field.getParams().MAX_ITER + 1];
+            for (int i = 0; i < counts.length; i++) {
+                values[i] = (short) counts[i];
+                histogram[counts[i]]++;
+            }
+            field.setHistogram(histogram);
+            return field;
+        }, scheduler.getPool());
+    }
+
+    /**
+     * Вычисляет оставшееся количество итераций для всех пикселей кадра.
+     *
+     * @param params Параметры кадра.
+     * @param offsetX Точное смещение по оси X.
+     * @param offsetY Точное смещение по оси Y.
+     * @param orbit Готовая опорная орбита или null, чтобы вычислить ее в центре кадра.
+     * @return Массив оставшихся итераций по строкам.
+     */
+    public int[] computeCounts(MandelbrotParams params, BigDecimal offsetX, BigDecimal offsetY, ReferenceOrbit orbit) {
+        MathContext mc = ReferenceOrbit.precisionFor(params.ZOOM);
+        if (orbit == null || orbit.getMaxIter() < params.MAX_ITER) {
+            orbit = new ReferenceOrbit(pixelReal(params, offsetX, params.width / 2, mc),
+                    pixelImaginary(params, offsetY, params.height / 2, mc), params.MAX_ITER, mc);
+        }
+
+        int[] counts = new int[params.width * params.height];
+        double maxDelta = 0;
+        for (int x : new int[]{0, params.width - 1}) {
+            for (int y : new int[]{0, params.height - 1}) {
+                maxDelta = Math.max(maxDelta, Math.hypot(deltaReal(params, offsetX, orbit, x),
+                        deltaImaginary(params, offsetY, orbit, y)));
+            }
+        }
+        int skip = useSeries ? orbit.seriesSkip(maxDelta, SERIES_TOLERANCE) : 0;
+        lastSeriesSkip = skip;
+        renderRows(params, offsetX, offsetY, orbit, skip, counts, null);
+
+        int references = 1;
+        List<Integer> glitched = collectGlitched(counts);
+        while (!glitched.isEmpty() && references < MAX_REFERENCES) {
+            int index = glitched.get(glitched.size() / 2);
+            orbit = new ReferenceOrbit(pixelReal(params, offsetX, index % params.width, mc),
+                    pixelImaginary(params, offsetY, index / params.width, mc), params.MAX_ITER, mc);
+            references++;
+            renderRows(params, offsetX, offsetY, orbit, 0, counts, glitched);
+            glitched = collectGlitched(counts);
+        }
+
+        for (int index : glitched) {
+            ReferenceOrbit exact = new ReferenceOrbit(pixelReal(params, offsetX, index % params.width, mc),
+                    pixelImaginary(params, offsetY, index / params.width, mc), params.MAX_ITER, mc);
+            counts[index] = params.MAX_ITER - exact.getLength();
+            references++;
+        }
+        lastReferenceCount = references;
+        return counts;
+    }
+
+    /**
+     * Находит центр кадра у границы множества на масштабе targetZoom, начиная с неглубокого вида.
+     * На каждом шаге рендерится миниатюра, центр переносится в пиксель с наибольшим временем выхода
+     * среди покинувших круг (он ближе всего к границе), а масштаб увеличивается в DESCENT_STEP раз.
+     *
+     * @param start Неглубокий стартовый вид.
+     * @param targetZoom Целевой уровень масштабирования.
+     * @return Массив {offsetX, offsetY} либо null, если спуск уперся во внутренность множества или в пустую область.
+     */
+    public BigDecimal[] descend(MandelbrotParams start, double targetZoom) {
+        int probeWidth = 64;
+        int probeHeight = Math.max(1, start.height * probeWidth / start.width);
+        BigDecimal offsetX = new BigDecimal(start.offsetX);
+        BigDecimal offsetY = new BigDecimal(start.offsetY);
+        double zoom = start.ZOOM;
+
+        while (zoom < targetZoom) {
+            zoom = targetZoom / zoom <= DESCENT_STEP ? targetZoom : zoom * DESCENT_STEP;
+            MandelbrotParams probe = new MandelbrotParams(probeWidth, probeHeight, zoom * probeWidth / start.width,
+                    start.MAX_ITER, offsetX.doubleValue(), offsetY.doubleValue());
+            int[] counts = computeCounts(probe, offsetX, offsetY, null);
+
+            int best = -1;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0 && (best < 0 || counts[i] < counts[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0 || counts[best] == start.MAX_ITER) {
+                return null;
+            }
+            MathContext mc = ReferenceOrbit.precisionFor(probe.ZOOM);
+            offsetX = pixelReal(probe, offsetX, best % probeWidth, mc);
+            offsetY = pixelImaginary(probe, offsetY, best / probeWidth, mc);
+        }
+        return new BigDecimal[]{offsetX, offsetY};
+    }
+
+    private void renderRows(MandelbrotParams params, BigDecimal offsetX, BigDecimal offsetY, ReferenceOrbit orbit,
+                            int skip, int[] counts, List<Integer> only) {
+        double shiftX = offsetX.subtract(orbit.getCX()).doubleValue();
+        double shiftY = offsetY.subtract(orbit.getCY()).doubleValue();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        if (only == null) {
+            for (int row = 0; row < params.height; row++) {
+                int y = row;
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    double dci = (y - params.height / 1.75) / params.ZOOM + shiftY;
+                    for (int x = 0; x < params.width; x++) {
+                        double dcr = (x - params.width / 1.75) / params.ZOOM + shiftX;
+                        counts[y * params.width + x] = perturb(orbit, dcr, dci, skip, params.MAX_ITER);
+                    }
+                }, scheduler.getPool()));
+            }
+        } else {
+            int chunk = 1024;
+            for (int from = 0; from < only.size(); from += chunk) {
+                List<Integer> part = only.subList(from, Math.min(from + chunk, only.size()));
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    for (int index : part) {
+                        double dcr = (index % params.width - params.width / 1.75) / params.ZOOM + shiftX;
+                        double dci = (index / params.width - params.height / 1.75) / params.ZOOM + shiftY;
+                        counts[index] = perturb(orbit, dcr, dci, skip, params.MAX_ITER);
+                    }
+                }, scheduler.getPool()));
+            }
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Итерирует отклонение пикселя от опорной орбиты.
+     *
+     * @return Оставшееся количество итераций либо GLITCHED.
+     */
+    private static int perturb(ReferenceOrbit orbit, double dcr, double dci, int skip, int MAX_ITER) {
+        double[] zr = orbit.zr();
+        double[] zi = orbit.zi();
+        int length = orbit.getLength();
+        double dzr = 0;
+        double dzi = 0;
+        int n = 0;
+        if (skip > 0) {
+            double[] dz = orbit.series(skip, dcr, dci);
+            dzr = dz[0];
+            dzi = dz[1];
+            n = skip;
+        }
+
+        while (n < MAX_ITER) {
+            double x = zr[n] + dzr;
+            double y = zi[n] + dzi;
+            double magnitude = x * x + y * y;
+            if (magnitude >= 4) {
+                return MAX_ITER - n;
+            }
+            if (n == length || magnitude < GLITCH_TOLERANCE * (zr[n] * zr[n] + zi[n] * zi[n])) {
+                return GLITCHED;
+            }
+            double tmp = 2 * (zr[n] * dzr - zi[n] * dzi) + dzr * dzr - dzi * dzi + dcr;
+            dzi = 2 * (zr[n] * dzi + zi[n] * dzr) + 2 * dzr * dzi + dci;
+            dzr = tmp;
+            n++;
+        }
+        return 0;
+    }
+
+    private static List<Integer> collectGlitched(int[] counts) {
+        List<Integer> glitched = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == GLITCHED) {
+                glitched.add(i);
+            }
+        }
+        return glitched;
+    }
+
+    private static double deltaReal(MandelbrotParams params, BigDecimal offsetX, ReferenceOrbit orbit, int x) {
+        return (x - params.width / 1.75) / params.ZOOM + offsetX.subtract(orbit.getCX()).doubleValue();
+    }
+
+    private static double deltaImaginary(MandelbrotParams params, BigDecimal offsetY, ReferenceOrbit orbit, int y) {
+        return (y - params.height / 1.75) / params.ZOOM + offsetY.subtract(orbit.getCY()).doubleValue();
+    }
+
+    private static BigDecimal pixelReal(MandelbrotParams params, BigDecimal offsetX, int x, MathContext mc) {
+        return new BigDecimal(x - params.width / 1.75).divide(new BigDecimal(params.ZOOM), mc).add(offsetX, mc);
+    }
+
+    private static BigDecimal pixelImaginary(MandelbrotParams params, BigDecimal offsetY, int y, MathContext mc) {
+        return new BigDecimal(y - params.height / 1.75).divide(new BigDecimal(params.ZOOM), mc).add(offsetY, mc);
+    }
+}
\ No newline at end of file
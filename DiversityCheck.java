@@ -0,0 +1,167 @@
+/**
+ * Класс DiversityCheck содержит условия разнообразия ключевого изображения: доля черных пикселей не выше 7.5%,
+ * уникальных цветов больше 250, а самый частый цвет занимает меньше 20% кадра.
+ * Проверка выполняется либо по готовым пикселям, либо прямо по полю итераций: в поле не больше MAX_ITER + 1
+ * различных значений, поэтому хватает гистограммы и палитры без раскраски кадра. Рендерер по плиткам собирает
+ * гистограмму во время рендеринга, так что вердикт стоит O(MAX_ITER) и не требует прохода по пикселям.
+ * Цвета считаются в IntCountMap без упаковки в Integer.
+ */
+public class DiversityCheck {
+    public static final double BLACK_THRESHOLD = 0.075; // Максимальная доля черных пикселей
+    public static final int MIN_UNIQUE_COLORS = 250; // Минимальное количество уникальных цветов (не включительно)
+    public static final double MAX_DOMINANT_SHARE = 0.2; // Максимальная доля самого частого цвета
+
+    /**
+     * Причина отказа проверки разнообразия.
+     */
+    public enum Rejection {
+        BLACK, // Слишком много черных пикселей
+        COLORS, // Слишком мало уникальных цветов
+        DOMINANCE // Самый частый цвет занимает слишком большую долю кадра
+    }
+
+    /**
+     * Проверяет разнообразие кадра по полю итераций. Кадр, рендеринг которого был остановлен досрочно, отклоняется.
+     *
+     * @param field Поле итераций.
+     * @param palette Палитра, которой кадр будет раскрашен.
+     * @return true, если кадр удовлетворяет условиям разнообразия, иначе false.
+     */
+    public static boolean check(IterationField field, Palette palette) {
+        return reason(field, palette) == null;
+    }
+
+    /**
+     * Проверяет разнообразие кадра по полю итераций и возвращает причину отказа.
+     * Для кадра, рендеринг которого был остановлен досрочно, возвращается причина остановки.
+     *
+     * @param field Поле итераций.
+     * @param palette Палитра, которой кадр будет раскрашен.
+     * @return Причина отказа или null, если кадр удовлетворяет условиям разнообразия.
+     */
+    public static Rejection reason(IterationField field, Palette palette) {
+        if (field.isAborted()) {
+            return field.getRejection();
+        }
+        return reason(field.histogram(), palette, field.getWidth() * field.getHeight());
+    }
+
+    /**
+     * Проверяет разнообразие кадра по гистограмме значений поля итераций.
+     * Значения с одинаковым цветом в палитре объединяются, поэтому результат совпадает с проверкой по пикселям.
+     *
+     * @param histogram Гистограмма значений поля итераций.
+     * @param palette Палитра кадра.
+     * @param totalPixels Количество пикселей кадра.
+     * @return true, если кадр удовлетворяет условиям разнообразия, иначе false.
+     */
+    public static boolean check(int[] histogram, Palette palette, int totalPixels) {
+        return reason(histogram, palette, totalPixels) == null;
+    }
+
+    /**
+     * Проверяет разнообразие кадра по гистограмме значений поля итераций и возвращает причину отказа.
+     *
+     * @param histogram Гистограмма значений поля итераций.
+     * @param palette Палитра кадра.
+     * @param totalPixels Количество пикселей кадра.
+     * @return Причина отказа или null, если кадр удовлетворяет условиям разнообразия.
+     */
+    public static Rejection reason(int[] histogram, Palette palette, int totalPixels) {
+        IntCountMap colorCount = new IntCountMap(histogram.length);
+        int blackPixelCount = 0;
+        for (int count = 0; count < histogram.length; count++) {
+            if (histogram[count] == 0) {
+                continue;
+            }
+            int color = palette.color(count);
+            if (isBlackPixel(color)) {
+                blackPixelCount += histogram[count];
+            }
+            colorCount.add(color, histogram[count]);
+        }
+
+        if ((double) blackPixelCount / totalPixels > BLACK_THRESHOLD) {
+            return Rejection.BLACK;
+        }
+        if (colorCount.size() <= MIN_UNIQUE_COLORS) {
+            return Rejection.COLORS;
+        }
+        return (double) colorCount.getMaxCount() / totalPixels < MAX_DOMINANT_SHARE ? null : Rejection.DOMINANCE;
+    }
+
+    /**
+     * Проверяет разнообразие кадра по пикселям за один проход, читая массив без копирования.
+     *
+     * @param pixels Пиксели кадра.
+     * @return true, если кадр удовлетворяет условиям разнообразия, иначе false.
+     */
+    public static boolean check(int[] pixels) {
+        int totalPixels = pixels.length;
+        IntCountMap colorCount = new IntCountMap(1024);
+        int blackPixelCount = 0;
+
+        for (int pixel : pixels) {
+            if (isBlackPixel(pixel)) {
+                blackPixelCount++;
+            }
+            colorCount.add(pixel, 1);
+        }
+
+        if ((double) blackPixelCount / totalPixels > BLACK_THRESHOLD) {
+            return false;
+        }
+        double percentage = (double) colorCount.getMaxCount() / totalPixels;
+        return (colorCount.size() > MIN_UNIQUE_COLORS && percentage < MAX_DOMINANT_SHARE);
+    }
+
+    /**
+     * Проверяет, гарантирует ли уже посчитанная часть кадра отказ. Обе величины при досчете кадра только растут:
+     * точки множества (значение 0) черные, а все пиксели одного значения поля получают один цвет,
+     * поэтому доля самого частого цвета не меньше доли самого большого столбца гистограммы.
+     *
+     * @param blackCount Количество уже посчитанных точек множества.
+     * @param maxBin Наибольший столбец уже собранной гистограммы.
+     * @param totalPixels Количество пикселей всего кадра.
+     * @return true, если кадр будет отклонен при любых значениях оставшихся пикселей.
+     */
+    public static boolean isRejectionGuaranteed(int blackCount, int maxBin, int totalPixels) {
+        return guaranteedRejection(blackCount, maxBin, totalPixels) != null;
+    }
+
+    /**
+     * Возвращает причину отказа, который уже гарантирован посчитанной частью кадра (см. isRejectionGuaranteed).
+     *
+     * @param blackCount Количество уже посчитанных точек множества.
+     * @param maxBin Наибольший столбец уже собранной гистограммы.
+     * @param totalPixels Количество пикселей всего кадра.
+     * @return Причина гарантированного отказа или null, если отказ еще не гарантирован.
+     */
+    public static Rejection guaranteedRejection(int blackCount, int maxBin, int totalPixels) {
+        if ((double) blackCount / totalPixels > BLACK_THRESHOLD) {
+            return Rejection.BLACK;
+        }
+        return (double) maxBin / totalPixels >= MAX_DOMINANT_SHARE ? Rejection.DOMINANCE : null;
+    }
+
+    public static boolean isBlackShareAboveThreshold(int[] pixels, double threshold) {
+        int blackPixelCount = 0;
+
+        for (int pixel : pixels) {
+            if (isBlackPixel(pixel)) {
+                blackPixelCount++;
+            }
+        }
+
+        // Вычисление процента черных пикселей
+        double percentageBlack = (double) blackPixelCount / pixels.length;
+
+        // Сравнение с порогом
+        return percentageBlack > threshold;
+    }
+
+    public static boolean isBlackPixel(int pixel) {
+        // Проверка, является ли пиксель черным
+        return (pixel & 0xFFFFFF) == 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Класс DiversityProbe выполняет пробный проход по разреженной сетке пикселей кадра (по умолчанию каждый 8-й пиксель,
+ * что для 1024x720 дает сетку 128x90) и оценивает долю черных пикселей, количество уникальных цветов и долю
+ * самого частого цвета. Полный рендеринг выполняется только для видов, которые, скорее всего, пройдут проверку разнообразия.
+ * Пробные пиксели совпадают с пикселями полного кадра, поэтому оценка не зависит от масштаба миниатюры.
+ *
+ * Класс также ведет статистику ложных принятий и ложных отказов относительно точной проверки. Для оценки ложных отказов
+ * часть отклоненных зондом видов (auditRate) все равно рендерится полностью.
+ */
+public class DiversityProbe {
+    public static final int DEFAULT_STRIDE = 8; // Шаг разреженной сетки по умолчанию
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считается проба
+    private final int stride; // Шаг разреженной сетки в пикселях
+    private double maxBlackShare = 0.085; // Допустимая доля черных пикселей в пробе
+    private int minUniqueColors = 120; // Минимальное количество уникальных цветов в пробе
+    private double maxDominantShare = 0.22; // Допустимая доля самого частого цвета в пробе
+    private double auditRate = 0.05; // Доля отклоненных видов, которые все равно проверяются полным рендерингом
+
+    private long probes; // Количество выполненных проб
+    private long probeAccepted; // Количество видов, принятых зондом
+    private long falseAccepts; // Принято зондом, но отклонено точной проверкой
+    private long audited; // Отклонено зондом и проверено полным рендерингом
+    private long falseRejects; // Отклонено зондом, но принято точной проверкой
+    private long skippedRenders; // Количество полных рендерингов, которых удалось избежать
+
+    /**
+     * Результат пробного прохода.
+     */
+    public static class Estimate {
+        public final double blackShare; // Оценка доли черных пикселей
+        public final int uniqueColors; // Количество уникальных цветов в пробе
+        public final double dominantShare; // Оценка доли самого частого цвета
+        public final boolean likelyValid; // true, если вид, скорее всего, пройдет проверку разнообразия
+
+        Estimate(double blackShare, int uniqueColors, double dominantShare, boolean likelyValid) {
+            this.blackShare = blackShare;
+            this.uniqueColors = uniqueColors;
+            this.dominantShare = dominantShare;
+            this.likelyValid = likelyValid;
+        }
+    }
+
+    /**
+     * Конструктор класса DiversityProbe.
+     *
+     * @param scheduler Планировщик рендеринга.
+     * @param stride Шаг разреженной сетки в пикселях.
+     */
+    public DiversityProbe(RenderScheduler scheduler, int stride) {
+        this.scheduler = scheduler;
+        this.stride = stride;
+    }
+
+    /**
+     * Выполняет пробный проход для указанного вида.
+     *
+     * @param params Параметры кадра.
+     * @return Оценка разнообразия кадра.
+     */
+    public Estimate probe(MandelbrotParams params) {
+        return probe(params, EscapeKernel.CLASSIC);
+    }
+
+    /**
+     * Выполняет пробный проход для указанного вида выбранным ядром.
+     *
+     * @param params Параметры кадра.
+     * @param kernel Ядро подсчета времени выхода.
+     * @return Оценка разнообразия кадра.
+     */
+    public Estimate probe(MandelbrotParams params, EscapeKernel kernel) {
+        int columns = (params.width + stride - 1) / stride;
+        int rows = (params.height + stride - 1) / stride;
+        int[] samples = new int[columns * rows];
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int r = row;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                int y = Math.min(r * stride + stride / 2, params.height - 1);
+                double cY = params.toImaginary(y);
+                for (int column = 0; column < columns; column++) {
+                    int x = Math.min(column * stride + stride / 2, params.width - 1);
+                    int i = kernel.escape(params.toReal(x), cY, params.MAX_ITER);
+                    samples[r * columns + column] = MandelbrotThread.toColor(i);
+                }
+            }, scheduler.getPool()));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+
+        IntCountMap colorCount = new IntCountMap(1024);
+        int blackCount = 0;
+        for (int pixel : samples) {
+            if (DiversityCheck.isBlackPixel(pixel)) {
+                blackCount++;
+            }
+            colorCount.add(pixel, 1);
+        }
+        int maxCount = colorCount.getMaxCount();
+
+        double blackShare = (double) blackCount / samples.length;
+        double dominantShare = (double) maxCount / samples.length;
+        boolean likelyValid = blackShare <= maxBlackShare && colorCount.size() >= minUniqueColors
+                && dominantShare < maxDominantShare;
+
+        synchronized (this) {
+            probes++;
+            if (likelyValid) {
+                probeAccepted++;
+            }
+        }
+        return new Estimate(blackShare, colorCount.size(), dominantShare, likelyValid);
+    }
+
+    /**
+     * Решает, нужно ли выполнить полный рендеринг вида, который зонд отклонил, чтобы оценить долю ложных отказов.
+     *
+     * @return true, если отклоненный вид нужно проверить полным рендерингом.
+     */
+    public synchronized boolean shouldAudit() {
+        long rejected = probes - probeAccepted;
+        boolean audit = auditRate > 0 && audited < Math.ceil(rejected * auditRate);
+        if (!audit) {
+            skippedRenders++;
+        }
+        return audit;
+    }
+
+    /**
+     * Запоминает результат точной проверки для вида, по которому выполнялась проба.
+     *
+     * @param estimate Оценка зонда.
+     * @param exactValid Результат точной проверки разнообразия.
+     */
+    public synchronized void record(Estimate estimate, boolean exactValid) {
+        if (estimate.likelyValid) {
+            if (!exactValid) {
+                falseAccepts++;
+            }
+        } else {
+            audited++;
+            if (exactValid) {
+                falseRejects++;
+            }
+        }
+    }
+
+    /**
+     * Возвращает долю ложных принятий среди видов, принятых зондом.
+     *
+     * @return Доля ложных принятий.
+     */
+    public synchronized double getFalseAcceptRate() {
+        return probeAccepted == 0 ? 0 : (double) falseAccepts / probeAccepted;
+    }
+
+    /**
+     * Возвращает долю ложных отказов среди отклоненных видов, проверенных полным рендерингом.
+     *
+     * @return Доля ложных отказов.
+     */
+    public synchronized double getFalseRejectRate() {
+        return audited == 0 ? 0 : (double) falseRejects / audited;
+    }
+
+    /**
+     * Выводит в консоль статистику работы зонда.
+     */
+    public synchronized void printReport() {
+        System.out.println("Проб: " + probes + ", принято зондом: " + probeAccepted
+                + ", пропущено полных рендерингов: " + skippedRenders);
+        System.out.printf("Ложные принятия: %d (%.2f%%), ложные отказы: %d из %d проверенных (%.2f%%)%n",
+                falseAccepts, getFalseAcceptRate() * 100, falseRejects, audited, getFalseRejectRate() * 100);
+    }
+
+    public void setMaxBlackShare(double maxBlackShare) {
+        this.maxBlackShare = maxBlackShare;
+    }
+
+    public void setMinUniqueColors(int minUniqueColors) {
+        this.minUniqueColors = minUniqueColors;
+    }
+
+    public void setMaxDominantShare(double maxDominantShare) {
+        this.maxDominantShare = maxDominantShare;
+    }
+
+    public void setAuditRate(double auditRate) {
+        this.auditRate = auditRate;
+    }
+}
\ No newline at end of file
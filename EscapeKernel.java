@@ -0,0 +1,36 @@
+/**
+ * Интерфейс EscapeKernel описывает ядро подсчета времени выхода (escape time) для точки c множества Мандельброта.
+ * Все реализации должны возвращать ровно то же значение, что и классический цикл из MandelbrotThread.
+ */
+public interface EscapeKernel {
+
+    /**
+     * Классическое ядро: прямой перебор итераций до выхода за круг радиуса 2 или исчерпания MAX_ITER.
+     */
+    EscapeKernel CLASSIC = MandelbrotThread::escape;
+
+    /**
+     * Вычисляет, сколько итераций осталось неиспользованными к моменту выхода орбиты точки c за круг радиуса 2.
+     *
+     * @param cX Действительная часть c.
+     * @param cY Мнимая часть c.
+     * @param MAX_ITER Максимальное количество итераций.
+     * @return Оставшееся количество итераций; 0, если точка не покинула круг (принадлежит множеству).
+     */
+    int escape(double cX, double cY, int MAX_ITER);
+
+    /**
+     * Вычисляет оставшееся количество итераций для ряда точек одной строки кадра.
+     * Реализация по умолчанию обрабатывает точки по одной; векторные ядра переопределяют этот метод.
+     *
+     * @param cX Действительные части точек строки.
+     * @param cY Мнимая часть, общая для всей строки.
+     * @param MAX_ITER Максимальное количество итераций.
+     * @param out Массив для записи результатов той же длины, что и cX.
+     */
+    default void escapeRow(double[] cX, double cY, int MAX_ITER, int[] out) {
+        for (int x = 0; x < cX.length; x++) {
+            out[x] = escape(cX[x], cY, MAX_ITER);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Класс FrameBuffer — буфер кадра поверх BufferedImage типа TYPE_INT_RGB с прямым доступом к массиву DataBufferInt.
+ * Потоки рендеринга пишут цвета прямо в массив, минуя setRGB и цветовую модель, а проверки разнообразия читают
+ * тот же массив без копирования через getRGB. Один буфер переиспользуется между попытками генерации.
+ * После получения массива Java2D перестает ускорять изображение, но для ключей это не имеет значения.
+ */
+public class FrameBuffer {
+    private final BufferedImage image; // Изображение, разделяющее память с массивом пикселей
+    private final int[] pixels; // Пиксели по строкам в формате 0xRRGGBB
+    private final int width; // Ширина кадра
+    private final int height; // Высота кадра
+
+    /**
+     * Создает новый буфер кадра указанного размера.
+     *
+     * @param width Ширина кадра.
+     * @param height Высота кадра.
+     */
+    public FrameBuffer(int width, int height) {
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Создает буфер кадра поверх существующего изображения.
+     *
+     * @param image Изображение типа TYPE_INT_RGB.
+     */
+    public FrameBuffer(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("Ожидается изображение типа TYPE_INT_RGB, получен тип " + image.getType());
+        }
+        this.image = image;
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    /**
+     * Проверяет, подходит ли буфер для кадра указанного размера.
+     *
+     * @param width Ширина кадра.
+     * @param height Высота кадра.
+     * @return true, если размеры совпадают.
+     */
+    public boolean fits(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс FrameHistogram собирает гистограмму значений поля итераций во время рендеринга.
+ * Каждая плитка считает значения в собственную плотную гистограмму потока и по завершении вливает
+ * в общую только занятый диапазон [min, max], поэтому после последней плитки вердикт разнообразия
+ * не требует отдельного прохода по пикселям.
+ *
+ * В режиме досрочной остановки после каждого слияния проверяется, гарантирует ли уже посчитанная часть кадра отказ:
+ * количество точек множества (значение 0, черный цвет) и размер самого большого столбца гистограммы
+ * со временем только растут. Как только отказ гарантирован, кадр помечается отклоненным, и оставшиеся плитки
+ * выходят, не досчитывая строки.
+ */
+public class FrameHistogram {
+    private static final ThreadLocal<int[]> LOCAL = ThreadLocal.withInitial(() -> new int[0]); // Гистограмма плитки
+
+    private final int[] histogram; // Общая гистограмма кадра
+    private final int totalPixels; // Количество пикселей кадра
+    private final boolean earlyAbort; // Останавливать ли рендеринг при гарантированном отказе
+    private final AtomicLong renderedPixels = new AtomicLong(); // Количество посчитанных пикселей
+    private int blackCount; // Количество пикселей со значением 0 (точки множества)
+    private int maxBin; // Наибольший столбец гистограммы
+    private volatile DiversityCheck.Rejection rejection; // Причина гарантированного отказа или null
+
+    /**
+     * Конструктор класса FrameHistogram без досрочной остановки.
+     *
+     * @param MAX_ITER Максимальное количество итераций кадра.
+     */
+    public FrameHistogram(int MAX_ITER) {
+        this(MAX_ITER, 0, false);
+    }
+
+    /**
+     * Конструктор класса FrameHistogram.
+     *
+     * @param MAX_ITER Максимальное количество итераций кадра.
+     * @param totalPixels Количество пикселей кадра.
+     * @param earlyAbort true, чтобы помечать кадр отклоненным, как только отказ гарантирован.
+     */
+    public FrameHistogram(int MAX_ITER, int totalPixels, boolean earlyAbort) {
+        this.histogram = new int[MAX_ITER + 1];
+        this.totalPixels = totalPixels;
+        this.earlyAbort = earlyAbort;
+    }
+
+    /**
+     * Возвращает пустую гистограмму плитки для текущего потока. Массив переиспользуется между плитками.
+     *
+     * @return Гистограмма длины не меньше MAX_ITER + 1, заполненная нулями.
+     */
+    public int[] local() {
+        int[] local = LOCAL.get();
+        if (local.length < histogram.length) {
+            local = new int[histogram.length];
+            LOCAL.set(local);
+        }
+        return local;
+    }
+
+    /**
+     * Вливает гистограмму плитки в общую и обнуляет ее занятый диапазон.
+     *
+     * @param local Гистограмма плитки, полученная из local().
+     * @param min Наименьшее значение в плитке.
+     * @param max Наибольшее значение в плитке.
+     */
+    public synchronized void merge(int[] local, int min, int max) {
+        for (int count = min; count <= max; count++) {
+            histogram[count] += local[count];
+            local[count] = 0;
+            maxBin = Math.max(maxBin, histogram[count]);
+        }
+        blackCount = histogram[0];
+        if (earlyAbort && rejection == null) {
+            rejection = DiversityCheck.guaranteedRejection(blackCount, maxBin, totalPixels);
+        }
+    }
+
+    /**
+     * Учитывает посчитанные пиксели плитки (в том числе плитки, прерванной на середине).
+     *
+     * @param pixels Количество посчитанных пикселей.
+     */
+    public void addRendered(long pixels) {
+        renderedPixels.addAndGet(pixels);
+    }
+
+    public boolean isRejected() {
+        return rejection != null;
+    }
+
+    public DiversityCheck.Rejection getRejection() {
+        return rejection;
+    }
+
+    public long getRenderedPixels() {
+        return renderedPixels.get();
+    }
+
+    public synchronized int[] getHistogram() {
+        return histogram;
+    }
+
+    public synchronized int getBlackCount() {
+        return blackCount;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Класс ImageCorpus перебирает пары исходных и зашифрованных изображений двух папок, не загружая их все в память.
+ * При создании читаются только списки файлов. Пары составляются по имени файла без расширения (img.png и
+ * img.mbk); если ни одно имя не совпало, файлы сопоставляются по порядку имен, как раньше. Изображения
+ * декодируются потоками загрузки с опережением не больше чем на prefetch файлов, передаются обработчику по
+ * порядку и больше нигде не хранятся, так что после обработки память сразу освобождается.
+ */
+public class ImageCorpus {
+    public static final int DEFAULT_PREFETCH = 4; // Файлов, декодируемых с опережением, по умолчанию
+
+    private final List<Path> inputs; // Исходные изображения пар
+    private final List<Path> outputs; // Зашифрованные изображения пар
+    private final int prefetch; // Наибольшее количество файлов, декодируемых с опережением
+
+    /**
+     * Декодированная пара изображений.
+     */
+    public record Pair(int index, Path inputFile, Path outputFile, BufferedImage input, BufferedImage output) {
+    }
+
+    /**
+     * Конструктор класса ImageCorpus.
+     *
+     * @param inputFolder Папка исходных изображений.
+     * @param outputFolder Папка зашифрованных изображений.
+     * @param prefetch Наибольшее количество файлов, декодируемых с опережением.
+     * @throws IOException Если папку не удалось прочитать.
+     */
+    public ImageCorpus(Path inputFolder, Path outputFolder, int prefetch) throws IOException {
+        this.prefetch = prefetch;
+        List<Path> inputFiles = list(inputFolder);
+        List<Path> outputFiles = list(outputFolder);
+        Map<String, Path> outputsByName = new HashMap<>();
+        for (Path file : outputFiles) {
+            outputsByName.putIfAbsent(baseName(file), file);
+        }
+        inputs = new ArrayList<>();
+        outputs = new ArrayList<>();
+        for (Path file : inputFiles) {
+            Path output = outputsByName.get(baseName(file));
+            if (output != null) {
+                inputs.add(file);
+                outputs.add(output);
+            }
+        }
+        if (inputs.isEmpty()) {
+            int n = Math.min(inputFiles.size(), outputFiles.size());
+            inputs.addAll(inputFiles.subList(0, n));
+            outputs.addAll(outputFiles.subList(0, n));
+        } else if (inputs.size() < inputFiles.size() || outputs.size() < outputFiles.size()) {
+            System.out.println("Файлов без пары: " + (inputFiles.size() - inputs.size()) + " исходных, "
+                    + (outputFiles.size() - outputs.size()) + " зашифрованных");
+        }
+    }
+
+    public int size() {
+        return inputs.size();
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public List<Path> getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * Передает обработчику пары изображений по порядку. Пары, у которых не удалось декодировать хотя бы одно
+     * изображение, пропускаются.
+     *
+     * @param action Обработчик пары.
+     */
+    public void forEachPair(Consumer<Pair> action) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            indexes.add(i);
+        }
+        stream(indexes, 0, i -> {
+            BufferedImage input = read(inputs.get(i), "Ошибка загрузки входного изображения!");
+            BufferedImage output = read(outputs.get(i), "Ошибка загрузки шифрованного изображения!");
+            return input == null || output == null ? null
+                    : new Pair(i, inputs.get(i), outputs.get(i), input, output);
+        }, (pair, i) -> action.accept(pair));
+    }
+
+    /**
+     * Декодирует файлы начиная с from, преобразует каждое изображение в потоке загрузки и передает результаты
+     * обработчику по порядку. Файлы, которые не удалось декодировать, пропускаются.
+     *
+     * @param files Файлы изображений.
+     * @param from Номер первого файла.
+     * @param transform Преобразование изображения (например, в плоскость пикселей), чтобы не хранить BufferedImage.
+     * @param action Обработчик результата и номера файла.
+     */
+    public <T> void streamImages(List<Path> files, int from, Function<BufferedImage, T> transform,
+                                 ObjIntConsumer<T> action) {
+        stream(files, from, file -> {
+            BufferedImage image = read(file, "Ошибка загрузки изображения!");
+            return image == null ? null : transform.apply(image);
+        }, action);
+    }
+
+    /**
+     * Загружает элементы с опережением не больше чем на prefetch и передает обработчику по порядку.
+     */
+    private <S, T> void stream(List<S> sources, int from, Function<S, T> load, ObjIntConsumer<T> action) {
+        ExecutorService decoders = Executors.newFixedThreadPool(prefetch, runnable -> {
+            Thread thread = new Thread(runnable, "corpus-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<CompletableFuture<T>> window = new ArrayDeque<>(prefetch);
+        try {
+            int next = from;
+            while (next < sources.size() || !window.isEmpty()) {
+                while (next < sources.size() && window.size() < prefetch) {
+                    S source = sources.get(next++);
+                    window.add(CompletableFuture.supplyAsync(() -> load.apply(source), decoders));
+                }
+                int index = next - window.size();
+                T value = window.poll().join();
+                if (value != null) {
+                    action.accept(value, index);
+                }
+            }
+        } finally {
+            decoders.shutdownNow();
+        }
+    }
+
+    private static BufferedImage read(Path file, String error) {
+        try {
+            System.out.println(file);
+            return KeyImage.readImage(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println(error);
+            return null;
+        }
+    }
+
+    private static List<Path> list(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
\ No newline at end of file
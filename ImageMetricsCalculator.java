@@ -1,114 +1,40 @@
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+/**
+ * Класс ImageMetricsCalculator вычисляет метрики качества шифрования по папкам исходных и зашифрованных изображений.
+ * Метрики сравнения двух изображений считаются движком PairMetrics за один проход по строкам.
+ */
 public class ImageMetricsCalculator {
+    private static final long PAIRWISE_MEMORY_BUDGET = 1L << 30; // Объем изображений в памяти при попарных метриках
 
     // Метод для вычисления коэффициента корреляции Пирсона
     public static double calculatePearsonCorrelation(BufferedImage img1, BufferedImage img2, int index) {
         System.out.println("Вычисление коэффициента корелляции между исходным и зашифрованным изображением номер:");
         System.out.println(index);
-        int width = img1.getWidth();
-        int height = img1.getHeight();
-        double sum1 = 0, sum2 = 0, sum1Sq = 0, sum2Sq = 0, pSum = 0;
-        int n = width * height;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb1 = img1.getRGB(x, y);
-                int rgb2 = img2.getRGB(x, y);
-                int r1 = (rgb1 >> 16) & 0xFF;
-                int r2 = (rgb2 >> 16) & 0xFF;
-
-                sum1 += r1;
-                sum2 += r2;
-                sum1Sq += r1 * r1;
-                sum2Sq += r2 * r2;
-                pSum += r1 * r2;
-            }
-        }
-
-        double num = pSum - (sum1 * sum2 / n);
-        double den = Math.sqrt((sum1Sq - sum1 * sum1 / n) * (sum2Sq - sum2 * sum2 / n));
-
-        if (den == 0) return 0;
-        return num / den;
+        return PairMetrics.compute(img1, img2, EnumSet.of(PairMetrics.Metric.PEARSON)).pearson();
     }
 
     // Метод для вычисления SSIM
     public static double calculateSSIM(BufferedImage img1, BufferedImage img2, int index) {
-        // Реализация SSIM может быть сложной, здесь используем упрощенный вариант
+        // Оконный SSIM (окно 8x8) по красному каналу
         System.out.println("Вычисление SSIM между исходным и зашифрованным изображением номер:");
         System.out.println(index);
-        int width = img1.getWidth();
-        int height = img1.getHeight();
-        double avg1 = 0, avg2 = 0, var1 = 0, var2 = 0, cov = 0;
-        int n = width * height;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb1 = img1.getRGB(x, y);
-                int rgb2 = img2.getRGB(x, y);
-                int r1 = (rgb1 >> 16) & 0xFF;
-                int r2 = (rgb2 >> 16) & 0xFF;
-
-                avg1 += r1;
-                avg2 += r2;
-            }
-        }
-
-        avg1 /= n;
-        avg2 /= n;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb1 = img1.getRGB(x, y);
-                int rgb2 = img2.getRGB(x, y);
-                int r1 = (rgb1 >> 16) & 0xFF;
-                int r2 = (rgb2 >> 16) & 0xFF;
-
-                var1 += (r1 - avg1) * (r1 - avg1);
-                var2 += (r2 - avg2) * (r2 - avg2);
-                cov += (r1 - avg1) * (r2 - avg2);
-            }
-        }
-
-        var1 /= n;
-        var2 /= n;
-        cov /= n;
-
-        double c1 = 6.5025, c2 = 58.5225;
-        double ssim = ((2 * avg1 * avg2 + c1) * (2 * cov + c2)) / ((avg1 * avg1 + avg2 * avg2 + c1) * (var1 + var2 + c2));
-        return ssim;
+        return new WindowedSSIM(RenderScheduler.getShared(), WindowedSSIM.DEFAULT_WINDOW, WindowedSSIM.Channel.RED)
+                .compute(img1, img2).mean();
     }
 
     // Метод для вычисления процента соответствующих пикселей
     public static double calculatePixelMatchPercentage(BufferedImage img1, BufferedImage img2, int index) {
         System.out.println("Вычисление совпадения по пикселям между исходным и зашифрованным изображениями номер:");
         System.out.println(index);
-        int width = img1.getWidth();
-        int height = img1.getHeight();
-        int matchCount = 0;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (img1.getRGB(x, y) == img2.getRGB(x, y)) {
-                    matchCount++;
-                }
-            }
-        }
-
-        return (double) matchCount / (width * height) * 100;
+        return PairMetrics.compute(img1, img2, EnumSet.of(PairMetrics.Metric.PIXEL_MATCH)).pixelMatch();
     }
 
     // Метод для вычисления коэффициентов корреляции между соседними элементами
@@ -186,22 +112,7 @@ public class ImageMetricsCalculator {
         System.out.println("Вычисление UACI между двумя зашифрованными изображениями с номерами:");
         System.out.println(index1);
         System.out.println(index2);
-        int width = img1.getWidth();
-        int height = img1.getHeight();
-        double sum = 0;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb1 = img1.getRGB(x, y);
-                int rgb2 = img2.getRGB(x, y);
-                int r1 = (rgb1 >> 16) & 0xFF;
-                int r2 = (rgb2 >> 16) & 0xFF;
-
-                sum += Math.abs(r1 - r2);
-            }
-        }
-
-        return sum / (255 * width * height) * 100;
+        return PairMetrics.compute(img1, img2, EnumSet.of(PairMetrics.Metric.UACI)).uaci();
     }
 
     // Метод для вычисления NPCR
@@ -209,19 +120,7 @@ public class ImageMetricsCalculator {
         System.out.println("Вычисление NPCR между двумя зашифрованными изображениями с номерами:");
         System.out.println(index1);
         System.out.println(index2);
-        int width = img1.getWidth();
-        int height = img1.getHeight();
-        int diffCount = 0;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (img1.getRGB(x, y) != img2.getRGB(x, y)) {
-                    diffCount++;
-                }
-            }
-        }
-
-        return (double) diffCount / (width * height) * 100;
+        return PairMetrics.compute(img1, img2, EnumSet.of(PairMetrics.Metric.NPCR)).npcr();
     }
 
     // Метод для вычисления NFC
@@ -229,24 +128,7 @@ public class ImageMetricsCalculator {
         System.out.println("Вычисление NFC между двумя зашифрованными изображениями с номерами");
         System.out.println(index1);
         System.out.println(index2);
-        int width = img1.getWidth();
-        int height = img1.getHeight();
-        int diffBits = 0;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb1 = img1.getRGB(x, y);
-                int rgb2 = img2.getRGB(x, y);
-
-                for (int i = 0; i < 32; i++) {
-                    if (((rgb1 >> i) & 1) != ((rgb2 >> i) & 1)) {
-                        diffBits++;
-                    }
-                }
-            }
-        }
-
-        return (double) diffBits / (32 * width * height) * 100;
+        return PairMetrics.compute(img1, img2, EnumSet.of(PairMetrics.Metric.NFC)).nfc();
     }
 
     // Метод для вычисления средних значений метрик по массиву изображений
@@ -272,24 +154,35 @@ public class ImageMetricsCalculator {
                 }
             }
         else {
-            for (int i = 0; i < n; i++) {
-                for (int j = i + 1; j < n; j++) {
-                    switch (metric) {
-                        case 4:
-                            sum += calculateUACI(images2[i], images2[j], i, j);
-                            break;
-                        case 5:
-                            sum += calculateNPCR(images2[i], images2[j], i, j);
-                            break;
-                        case 6:
-                            sum += calculateNFC(images2[i], images2[j], i, j);
-                            break;
-                    }
-                }
+            // Попарные метрики зашифрованных изображений считаются блоками на всех ядрах, см. PairMatrix
+            PairMatrix.Result pairs = new PairMatrix(RenderScheduler.getShared(), PairMatrix.DEFAULT_BLOCK_SIZE, false)
+                    .compute(Arrays.copyOf(images2, n));
+            switch (metric) {
+                case 4:
+                    return new double[]{pairs.uaciStats().mean()};
+                case 5:
+                    return new double[]{pairs.npcrStats().mean()};
+                case 6:
+                    return new double[]{pairs.nfcStats().mean()};
             }
         }
 
-        return new double[]{sum / (n * (n - 1) / 2)};
+        return new double[]{sum / n};
+    }
+
+    // Метод для вычисления побитовой статистики (лавинного эффекта) по соседним парам изображений
+    public static BitPlaneAnalyzer.Report calculateAvalanche(BufferedImage[] images) {
+        System.out.println("Вычисление лавинного эффекта для соседних пар зашифрованных изображений");
+        BitPlaneAnalyzer.Report report = new BitPlaneAnalyzer.Report();
+        BitPlaneAnalyzer.Planes previous = null;
+        for (BufferedImage image : images) {
+            BitPlaneAnalyzer.Planes planes = BitPlaneAnalyzer.pack(image);
+            if (previous != null) {
+                report.merge(BitPlaneAnalyzer.compare(previous, planes));
+            }
+            previous = planes;
+        }
+        return report;
     }
 
     // Метод для вычисления средних значений Rh, Rl, Rd, D по массиву изображений
@@ -323,110 +216,96 @@ public class ImageMetricsCalculator {
         return true;
     }
 
+    /**
+     * Создает файл плоскостей для зашифрованных изображений корпуса.
+     *
+     * @param folder Папка файла плоскостей.
+     * @param corpus Корпус изображений.
+     * @return Файл плоскостей или null, если места не хватает или файл не удалось создать.
+     */
+    private static PairMatrix.PlaneFile openPlaneFile(String folder, ImageCorpus corpus) {
+        try {
+            return PairMatrix.PlaneFile.open(Paths.get(folder), corpus.getOutputs());
+        } catch (IOException e) {
+            System.out.println("Ошибка создания файла плоскостей: " + e.getMessage());
+            return null;
+        }
+    }
+
     public static void main(String[] args) {
         String inputFolder = "C:\\Users\\Илья\\IdeaProjects\\MandelbrotTests\\input";
         String outputFolder = "C:\\Users\\Илья\\IdeaProjects\\MandelbrotTests\\output";
+        String spillFolder = "C:\\Users\\Илья\\IdeaProjects\\MandelbrotTests\\spill"; // Папка файла плоскостей
 
-        List<BufferedImage> inputImages = new ArrayList<>();
-        List<BufferedImage> outputImages = new ArrayList<>();
-
-        try (Stream<Path> inputPaths = Files.walk(Paths.get(inputFolder));
-             Stream<Path> outputPaths = Files.walk(Paths.get(outputFolder))) {
-
-            inputImages = inputPaths
-                    .filter(Files::isRegularFile)
-                    .sorted((path1, path2) -> path1.toFile().getName().compareTo(path2.toFile().getName()))
-                    .map(Path::toFile)
-                    .map(file -> {
-                        try {
-                            System.out.println(file.getPath());
-                            return ImageIO.read(file);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            System.out.println("Ошибка загрузки входного изображения!");
-                            return null;
-                        }
-                    })
-                    .filter(img -> img != null)
-                    .collect(Collectors.toList());
-            System.out.println("Входное изображение загружено успешно!");
-
-            outputImages = outputPaths
-                    .filter(Files::isRegularFile)
-                    .sorted((path1, path2) -> path1.toFile().getName().compareTo(path2.toFile().getName()))
-                    .map(Path::toFile)
-                    .map(file -> {
-                        try {
-                            System.out.println(file.getPath());
-                            return ImageIO.read(file);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            System.out.println("Ошибка загрузки шифрованного изображения!");
-                            return null;
-                        }
-                    })
-                    .filter(img -> img != null)
-                    .collect(Collectors.toList());
-            System.out.println("Шифрованное изображение загружено успешно!");
-
+        ImageCorpus corpus;
+        try {
+            corpus = new ImageCorpus(Paths.get(inputFolder), Paths.get(outputFolder), ImageCorpus.DEFAULT_PREFETCH);
         } catch (IOException e) {
             e.printStackTrace();
             System.out.println("Ошибка!");
+            return;
+        }
+        // Плоскости зашифрованных изображений пишутся в файл по ходу прохода по парам, чтобы попарные метрики
+        // не декодировали их второй раз; без файла попарные проходы декодируют изображения сами
+        PairMatrix.PlaneFile outputPlanes = openPlaneFile(spillFolder, corpus);
+
+        // Метрики пар исходное/зашифрованное, Rh, Rl, Rd, D и лавинный эффект считаются по мере загрузки пар;
+        // изображения не накапливаются и освобождаются сразу после обработки
+        double[] sums = new double[7]; // R, SSIM, совпадение пикселей, Rh, Rl, Rd, D
+        int[] count = {0};
+        BitPlaneAnalyzer.Report avalanche = new BitPlaneAnalyzer.Report();
+        BitPlaneAnalyzer.Planes[] previous = {null};
+        WindowedSSIM ssim = new WindowedSSIM(RenderScheduler.getShared(), WindowedSSIM.DEFAULT_WINDOW,
+                WindowedSSIM.Channel.RED);
+        corpus.forEachPair(pair -> {
+            System.out.println("Вычисление метрик пары номер:");
+            System.out.println(pair.index());
+            PairMetrics.Result metrics = PairMetrics.compute(pair.input(), pair.output(),
+                    EnumSet.of(PairMetrics.Metric.PEARSON, PairMetrics.Metric.PIXEL_MATCH));
+            double[] correlations = calculateNeighborCorrelation(pair.output());
+            sums[0] += metrics.pearson();
+            sums[1] += ssim.compute(pair.input(), pair.output()).mean();
+            sums[2] += metrics.pixelMatch();
+            sums[3] += correlations[0];
+            sums[4] += correlations[1];
+            sums[5] += correlations[2];
+            sums[6] += calculateHistogramVariance(pair.output());
+            count[0]++;
+            BitPlaneAnalyzer.Planes planes = BitPlaneAnalyzer.pack(pair.output());
+            if (previous[0] != null) {
+                avalanche.merge(BitPlaneAnalyzer.compare(previous[0], planes));
+            }
+            previous[0] = planes;
+            if (outputPlanes != null) {
+                outputPlanes.add(pair.output());
+            }
+        });
+        int n = count[0];
+
+        // Вычисление средних значений UACI, NPCR, NFC для попарных сравнений output изображений проходами
+        // в пределах PAIRWISE_MEMORY_BUDGET: по файлу плоскостей или с повторным декодированием
+        PairMatrix matrix = new PairMatrix(RenderScheduler.getShared(), PairMatrix.DEFAULT_BLOCK_SIZE, false);
+        PairMatrix.Result pairs;
+        try (outputPlanes) {
+            pairs = outputPlanes != null ? matrix.compute(outputPlanes, PAIRWISE_MEMORY_BUDGET)
+                    : matrix.compute(corpus, corpus.getOutputs(), PAIRWISE_MEMORY_BUDGET, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Ошибка!");
+            return;
         }
-
-        BufferedImage[] inputImageArray = inputImages.toArray(new BufferedImage[0]);
-        BufferedImage[] outputImageArray = outputImages.toArray(new BufferedImage[0]);
-
-//        double totalR = 0;
-//        double totalSSIM = 0;
-//        double totalPixelMatch = 0;
-//        int count = inputImageArray.length;
-//
-//        for (int i = 0; i < count; i++) {
-//            BufferedImage inputImage = inputImageArray[i];
-//            BufferedImage outputImage = outputImageArray[i];
-//
-//            if (areImagesIdentical(inputImage, outputImage)) {
-//                System.out.println("Изображения " + (i + 1) + " идентичны.");
-//            } else {
-//                System.out.println("Изображения " + (i + 1) + " не идентичны.");
-//            }
-//
-//            totalR += calculatePearsonCorrelation(inputImage, outputImage, i + 1);
-//            totalSSIM += calculateSSIM(inputImage, outputImage, i + 1);
-//            totalPixelMatch += calculatePixelMatchPercentage(inputImage, outputImage, i + 1);
-//        }
-//
-//        double avgR = totalR / count;
-//        double avgSSIM = totalSSIM / count;
-//        double avgPixelMatch = totalPixelMatch / count;
-
-        // Вычисление средних значений метрик для input и output изображений
-        double[] avgR = calculateAverageMetrics(inputImageArray, outputImageArray, 1);
-        double[] avgSSIM = calculateAverageMetrics(inputImageArray, outputImageArray, 2);
-        double[] avgPixelMatch = calculateAverageMetrics(inputImageArray, outputImageArray, 3);
-
-        // Вычисление средних значений Rh, Rl, Rd, D для output изображений
-        double[] avgNeighborCorrelationAndVariance = calculateAverageNeighborCorrelationAndVariance(outputImageArray);
-
-        // Вычисление средних значений UACI, NPCR, NFC для попарных сравнений output изображений
-        double[] avgUACI = calculateAverageMetrics(inputImageArray, outputImageArray, 4);
-        double[] avgNPCR = calculateAverageMetrics(inputImageArray, outputImageArray, 5);
-        double[] avgNFC = calculateAverageMetrics(inputImageArray, outputImageArray, 6);
 
         // Вывод результатов
-        System.out.println("Среднее R между исходным и зашифрованным изображением: " + avgR[0]);
-        System.out.println("Среднее SSIM между исходным и зашифрованным изображением: " + avgSSIM[0]);
-        System.out.println("Средний процент соответствующих пикселей у исходного и зашифрованного изображения: " + avgPixelMatch[0]);
-        System.out.println("Среднее Rh для зашифрованных изображений: " + avgNeighborCorrelationAndVariance[0]);
-        System.out.println("Среднее Rl для зашифрованных изображений: " + avgNeighborCorrelationAndVariance[1]);
-        System.out.println("Среднее Rd для зашифрованных изображений: " + avgNeighborCorrelationAndVariance[2]);
-        System.out.println("Среднее D для зашифрованных изображений: " + avgNeighborCorrelationAndVariance[3]);
-        System.out.println("Среднее UACI для зашифрованных изображений: " + avgUACI[0]);
-        System.out.println("Среднее NPCR для зашифрованных изображений: " + avgNPCR[0]);
-        System.out.println("Среднее NFC для зашифрованных изображений: " + avgNFC[0]);
-//        System.out.println("Среднее R между исходным и расшифрованным изображением: " + avgR);
-//        System.out.println("Среднее SSIM между исходным и расшифрованным изображением: " + avgSSIM);
-//        System.out.println("Средний процент соответствующих пикселей у исходного и расшифрованного изображения: " + avgPixelMatch);
+        System.out.println("Среднее R между исходным и зашифрованным изображением: " + sums[0] / n);
+        System.out.println("Среднее SSIM между исходным и зашифрованным изображением: " + sums[1] / n);
+        System.out.println("Средний процент соответствующих пикселей у исходного и зашифрованного изображения: " + sums[2] / n);
+        System.out.println("Среднее Rh для зашифрованных изображений: " + sums[3] / n);
+        System.out.println("Среднее Rl для зашифрованных изображений: " + sums[4] / n);
+        System.out.println("Среднее Rd для зашифрованных изображений: " + sums[5] / n);
+        System.out.println("Среднее D для зашифрованных изображений: " + sums[6] / n);
+        System.out.println("Среднее UACI для зашифрованных изображений: " + pairs.uaciStats().mean());
+        System.out.println("Среднее NPCR для зашифрованных изображений: " + pairs.npcrStats().mean());
+        System.out.println("Среднее NFC для зашифрованных изображений: " + pairs.nfcStats().mean());
+        avalanche.printReport();
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+/**
+ * Класс IntCountMap — счетчик вхождений int-значений на открытой адресации (линейное пробирование).
+ * В отличие от HashMap<Integer, Integer> не упаковывает ключи и счетчики в объекты, поэтому подсчет цветов кадра
+ * не создает мусора и идет по двум плотным массивам.
+ */
+public class IntCountMap {
+    private int[] keys; // Значения
+    private int[] counts; // Количество вхождений; 0 означает пустую ячейку
+    private int size; // Количество различных значений
+    private int maxCount; // Наибольшее количество вхождений одного значения
+
+    /**
+     * Создает счетчик с запасом под указанное количество различных значений.
+     *
+     * @param expected Ожидаемое количество различных значений.
+     */
+    public IntCountMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Увеличивает счетчик значения.
+     *
+     * @param key Значение.
+     * @param n Положительное приращение.
+     */
+    public void add(int key, int n) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (counts[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (counts[slot] == 0) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                counts[slot] = n;
+                maxCount = Math.max(maxCount, n);
+                grow();
+                return;
+            }
+        }
+        counts[slot] += n;
+        maxCount = Math.max(maxCount, counts[slot]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+/**
+ * Класс InteriorCullingKernel реализует ядро подсчета времени выхода, которое не тратит все MAX_ITER итераций
+ * на точки внутри множества. Используются три приема:
+ * 1) аналитическая проверка попадания в главную кардиоиду и круг периода 2;
+ * 2) обнаружение цикла орбиты (алгоритм Брента: опорная точка обновляется через удваивающиеся интервалы);
+ * 3) досрочный выход с результатом 0 для точек, ограниченность орбиты которых доказана одним из этих способов.
+ *
+ * При нулевом допуске цикл засчитывается только при точном совпадении точек орбиты в арифметике double.
+ * Такая орбита дальше повторяется бесконечно и никогда не выйдет за круг, поэтому результат побитово совпадает
+ * с классическим ядром. Положительный допуск ускоряет обнаружение циклов, но может зачернить отдельные пиксели у границы.
+ */
+public class InteriorCullingKernel implements EscapeKernel {
+    private final double tolerance; // Допуск совпадения точек орбиты при обнаружении цикла
+
+    /**
+     * Конструктор ядра с нулевым допуском (результат совпадает с классическим ядром).
+     */
+    public InteriorCullingKernel() {
+        this(0);
+    }
+
+    /**
+     * Конструктор класса InteriorCullingKernel.
+     *
+     * @param tolerance Допуск совпадения точек орбиты при обнаружении цикла.
+     */
+    public InteriorCullingKernel(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public int escape(double cX, double cY, int MAX_ITER) {
+        if (isInMainCardioid(cX, cY) || isInPeriod2Bulb(cX, cY)) {
+            return 0;
+        }
+
+        double zx = 0;
+        double zy = 0;
+        double checkX = 0; // Опорная точка орбиты для обнаружения цикла
+        double checkY = 0;
+        int checkPeriod = 8; // Длина текущего интервала между обновлениями опорной точки
+        int steps = 0;
+        int i = MAX_ITER;
+        while (zx * zx + zy * zy < 4 && i > 0) {
+            double tmp = zx * zx - zy * zy + cX;
+            zy = 2.0 * zx * zy + cY;
+            zx = tmp;
+            i--;
+
+            if (Math.abs(zx - checkX) <= tolerance && Math.abs(zy - checkY) <= tolerance) {
+                return 0; // Орбита зациклилась и никогда не покинет круг
+            }
+            if (++steps == checkPeriod) {
+                steps = 0;
+                checkPeriod <<= 1;
+                checkX = zx;
+                checkY = zy;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Проверяет попадание точки в главную кардиоиду.
+     *
+     * @param cX Действительная часть c.
+     * @param cY Мнимая часть c.
+     * @return true, если точка строго внутри главной кардиоиды.
+     */
+    public static boolean isInMainCardioid(double cX, double cY) {
+        double x = cX - 0.25;
+        double y2 = cY * cY;
+        double q = x * x + y2;
+        return q * (q + x) < 0.25 * y2;
+    }
+
+    /**
+     * Проверяет попадание точки в круг периода 2 с центром в -1 и радиусом 1/4.
+     *
+     * @param cX Действительная часть c.
+     * @param cY Мнимая часть c.
+     * @return true, если точка строго внутри круга периода 2.
+     */
+    public static boolean isInPeriod2Bulb(double cX, double cY) {
+        double x = cX + 1;
+        return x * x + cY * cY < 0.0625;
+    }
+}
\ No newline at end of file
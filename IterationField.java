@@ -0,0 +1,136 @@
+/**
+ * Класс IterationField — поле оставшихся итераций кадра (0 для точек множества), результат рендеринга,
+ * не зависящий от раскраски. Значения хранятся в short[] (два байта на пиксель вместо четырех у RGB)
+ * и читаются как беззнаковые, поэтому MAX_ITER может достигать 65535. Вместе с полем хранятся параметры кадра,
+ * по которым оно получено, поэтому перекраска и статистика не требуют повторного рендеринга.
+ */
+public class IterationField {
+    public static final int MAX_SUPPORTED_ITER = 0xFFFF; // Наибольшее MAX_ITER, которое помещается в short
+
+    private final MandelbrotParams params; // Параметры кадра
+    private final short[] counts; // Оставшиеся итерации по строкам
+    private int[] histogram; // Гистограмма, собранная рендерером, или null
+    private boolean aborted; // Рендеринг остановлен досрочно, поле заполнено не полностью
+    private long renderedPixels = -1; // Количество посчитанных пикселей при досрочной остановке
+    private DiversityCheck.Rejection rejection; // Причина досрочной остановки или null
+
+    /**
+     * Создает новое поле для кадра с указанными параметрами.
+     *
+     * @param params Параметры кадра.
+     */
+    public IterationField(MandelbrotParams params) {
+        this(params, new short[params.width * params.height]);
+    }
+
+    private IterationField(MandelbrotParams params, short[] counts) {
+        if (params.MAX_ITER > MAX_SUPPORTED_ITER) {
+            throw new IllegalArgumentException("MAX_ITER = " + params.MAX_ITER + " не помещается в поле итераций");
+        }
+        this.params = params;
+        this.counts = counts;
+    }
+
+    /**
+     * Возвращает поле для нового кадра того же размера, переиспользуя память этого поля.
+     *
+     * @param params Параметры нового кадра.
+     * @return Поле с общей памятью, если размеры совпадают, иначе новое поле.
+     */
+    public IterationField reuse(MandelbrotParams params) {
+        if (params.width == this.params.width && params.height == this.params.height) {
+            return new IterationField(params, counts);
+        }
+        return new IterationField(params);
+    }
+
+    public MandelbrotParams getParams() {
+        return params;
+    }
+
+    public int getWidth() {
+        return params.width;
+    }
+
+    public int getHeight() {
+        return params.height;
+    }
+
+    /**
+     * Возвращает массив значений поля для прямой записи рендерерами.
+     *
+     * @return Значения поля по строкам (читать через & 0xFFFF).
+     */
+    public short[] getCounts() {
+        return counts;
+    }
+
+    public int get(int index) {
+        return counts[index] & 0xFFFF;
+    }
+
+    public int get(int x, int y) {
+        return counts[y * params.width + x] & 0xFFFF;
+    }
+
+    /**
+     * Помечает поле как недорисованное: рендеринг остановлен, потому что отказ проверки разнообразия уже гарантирован.
+     *
+     * @param renderedPixels Количество пикселей, посчитанных до остановки.
+     * @param rejection Причина гарантированного отказа.
+     */
+    public void markAborted(long renderedPixels, DiversityCheck.Rejection rejection) {
+        this.aborted = true;
+        this.renderedPixels = renderedPixels;
+        this.rejection = rejection;
+        this.histogram = null;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public DiversityCheck.Rejection getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Возвращает количество посчитанных пикселей.
+     *
+     * @return Количество пикселей до досрочной остановки либо все пиксели кадра.
+     */
+    public long getRenderedPixels() {
+        return aborted ? renderedPixels : (long) params.width * params.height;
+    }
+
+    public void set(int index, int count) {
+        counts[index] = (short) count;
+        histogram = null;
+    }
+
+    /**
+     * Возвращает гистограмму значений поля. Если рендерер собрал ее во время рендеринга, проход по полю не выполняется.
+     *
+     * @return Массив длины MAX_ITER + 1, где элемент i — количество пикселей со значением i.
+     */
+    public int[] histogram() {
+        if (histogram != null) {
+            return histogram;
+        }
+        int[] histogram = new int[params.MAX_ITER + 1];
+        for (short count : counts) {
+            histogram[count & 0xFFFF]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Запоминает гистограмму, собранную рендерером вместе с полем. Вызывается после записи всех значений;
+     * при последующем изменении поля через set гистограмма сбрасывается.
+     *
+     * @param histogram Гистограмма длины MAX_ITER + 1.
+     */
+    public void setHistogram(int[] histogram) {
+        this.histogram = histogram;
+    }
+}
\ No newline at end of file
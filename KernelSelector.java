@@ -0,0 +1,86 @@
+import java.util.Arrays;
+
+/**
+ * Класс KernelSelector при запуске выбирает между скалярным и векторным ядром подсчета времени выхода.
+ * Векторное ядро рассматривается, только если модуль jdk.incubator.vector подключен и ширина вектора
+ * не меньше двух элементов double. Оба ядра прогоняются на двух тестовых участках: у границы множества и
+ * на преимущественно внутреннем виде, как у видов пространства ключей, где решает отсечение внутренних точек.
+ * Результаты сравниваются, а в консоль выводится измеренное ускорение по сумме времени на обоих участках.
+ *
+ * VectorKernel входит в дерево исходников, поэтому компиляция требует --add-modules jdk.incubator.vector даже
+ * тогда, когда при запуске модуль не подключен и выбирается скалярное ядро.
+ */
+public class KernelSelector {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector"; // Модуль Vector API
+    private static final int BENCHMARK_ROUNDS = 3; // Количество прогонов каждого ядра
+
+    /**
+     * Выбирает самое быстрое ядро для текущей машины.
+     *
+     * @param scalar Скалярное ядро, с которым сравнивается векторное.
+     * @return Векторное ядро, если оно доступно и быстрее скалярного, иначе скалярное.
+     */
+    public static EscapeKernel select(EscapeKernel scalar) {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            System.out.println("Модуль " + VECTOR_MODULE + " не подключен, используется скалярное ядро");
+            return scalar;
+        }
+
+        EscapeKernel vector;
+        int lanes;
+        try {
+            Class<?> vectorClass = Class.forName("VectorKernel");
+            lanes = (int) vectorClass.getMethod("laneCount").invoke(null);
+            vector = (EscapeKernel) vectorClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Векторное ядро недоступно: " + e);
+            return scalar;
+        }
+        if (lanes < 2) {
+            System.out.println("Ширина вектора " + lanes + ", используется скалярное ядро");
+            return scalar;
+        }
+
+        // Участок у границы множества, где есть и внутренние точки, и точки с разным временем выхода,
+        // и вид, большую часть которого занимают кардиоида, круг периода 2 и внутренние циклы
+        MandelbrotParams[] views = {
+                new MandelbrotParams(256, 128, 4000, 1000, -0.75, 0.1),
+                new MandelbrotParams(256, 128, 300, 1000, -0.4, 0.0)
+        };
+        long scalarTime = 0;
+        long vectorTime = 0;
+        for (MandelbrotParams params : views) {
+            int[] expected = new int[params.width * params.height];
+            int[] actual = new int[params.width * params.height];
+            long scalarBest = Long.MAX_VALUE;
+            long vectorBest = Long.MAX_VALUE;
+            for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+                scalarBest = Math.min(scalarBest, run(scalar, params, expected));
+                vectorBest = Math.min(vectorBest, run(vector, params, actual));
+            }
+            if (!Arrays.equals(expected, actual)) {
+                System.out.println("Векторное ядро дало результат, отличный от скалярного, используется скалярное ядро");
+                return scalar;
+            }
+            scalarTime += scalarBest;
+            vectorTime += vectorBest;
+        }
+        double speedup = (double) scalarTime / vectorTime;
+        System.out.printf("Ширина вектора: %d, ускорение векторного ядра: %.2fx%n", lanes, speedup);
+        return speedup > 1 ? vector : scalar;
+    }
+
+    private static long run(EscapeKernel kernel, MandelbrotParams params, int[] out) {
+        double[] cXs = new double[params.width];
+        int[] row = new int[params.width];
+        for (int x = 0; x < params.width; x++) {
+            cXs[x] = params.toReal(x);
+        }
+        long start = System.nanoTime();
+        for (int y = 0; y < params.height; y++) {
+            kernel.escapeRow(cXs, params.toImaginary(y), params.MAX_ITER, row);
+            System.arraycopy(row, 0, out, y * params.width, params.width);
+        }
+        return System.nanoTime() - start;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR вокруг одной попытки получить ключ: от выбора вида до вердикта проверки разнообразия.
+ */
+@Name("mandelbrot.KeyAttempt")
+@Label("Key Attempt")
+@Category({"Mandelbrot", "Generation"})
+@Description("Попытка получить ключевое изображение")
+public class KeyAttemptEvent extends Event {
+    @Label("Zoom")
+    double zoom; // Уровень масштабирования
+
+    @Label("Max Iterations")
+    int maxIter; // MAX_ITER вида
+
+    @Label("Offset X")
+    double offsetX; // Смещение по оси X
+
+    @Label("Offset Y")
+    double offsetY; // Смещение по оси Y
+
+    @Label("Outcome")
+    String outcome; // ACCEPTED, PROBE или причина отказа (BLACK, COLORS, DOMINANCE)
+
+    @Label("Aborted")
+    boolean aborted; // Рендеринг остановлен досрочно
+
+    /**
+     * Завершает событие, если оно включено в записи JFR.
+     *
+     * @param params Параметры кадра.
+     * @param outcome Исход попытки.
+     * @param aborted true, если рендеринг был остановлен досрочно.
+     */
+    void finish(MandelbrotParams params, String outcome, boolean aborted) {
+        if (!shouldCommit()) {
+            return;
+        }
+        zoom = params.ZOOM;
+        maxIter = params.MAX_ITER;
+        offsetX = params.offsetX;
+        offsetY = params.offsetY;
+        this.outcome = outcome;
+        this.aborted = aborted;
+        commit();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,376 @@
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Класс KeyBatchGenerator генерирует пакет ключевых изображений без графического интерфейса.
+ * Генерация разбита на стадии: выбор вида (с пробным проходом), рендеринг, проверка разнообразия и кодирование PNG.
+ * Каждый ключ записывается атомарно и заносится в журнал RunManifest, поэтому прерванный прогон можно продолжить.
+ * Ключи сохраняются в PNG либо, без раскраски и сжатия, полем итераций в контейнер KeyImage (.mbk).
+ * Стадии работают в отдельных потоках и связаны ограниченными очередями, поэтому медленная стадия притормаживает
+ * предыдущие, а не накапливает кадры в памяти. Количество ключей в обработке ограничено пулом полей итераций:
+ * пока кодируется один ключ и проверяется второй, остальные рендерятся на общем пуле планировщика.
+ * Ход генерации публикуется в RenderMetrics (JMX), каждая попытка отмечается событием JFR KeyAttemptEvent.
+ */
+public class KeyBatchGenerator {
+    private static final int WIDTH = 1024; // Ширина ключевого изображения
+    private static final int HEIGHT = 720; // Высота ключевого изображения
+    private static final int MAX_WRITE_FAILURES = 3; // Ошибок записи подряд, после которых прогон прерывается
+
+    private final RenderScheduler scheduler; // Планировщик рендеринга по плиткам
+    private final EscapeKernel kernel; // Ядро подсчета времени выхода
+    private final DiversityProbe probe; // Пробный проход перед полным рендерингом
+    private final ViewSampler sampler = new ViewSampler(); // Выбор случайного вида
+    private final int inFlight; // Количество ключей, обрабатываемых одновременно
+    private final int encoders; // Количество потоков кодирования PNG
+    private boolean useProbe = true; // Выполнять ли пробный проход
+    private boolean raw = false; // Сохранять поле итераций в контейнер .mbk вместо PNG
+    private AcceptanceMap acceptanceMap; // Карта приемлемости видов или null для равномерного выбора
+    private MaxIterEstimator maxIterEstimator; // Оценка MAX_ITER по виду или null для случайного MAX_ITER
+    private boolean resume = false; // Продолжить прогон по журналу в папке ключей
+
+    private final RenderMetrics metrics = RenderMetrics.getShared(); // Метрики JMX
+    private final AtomicLong attempts = new AtomicLong(); // Количество выбранных видов
+    private final AtomicLong rendered = new AtomicLong(); // Количество полностью отрендеренных видов
+    private final AtomicLong renderedPixels = new AtomicLong(); // Пиксели, посчитанные полными рендерингами
+    private final AtomicLong savedPixels = new AtomicLong(); // Пиксели, которые не пришлось считать благодаря досрочной остановке
+
+    /**
+     * Вид, проходящий через стадии конвейера.
+     */
+    private static class Job {
+        final MandelbrotParams params; // Параметры кадра
+        final DiversityProbe.Estimate estimate; // Оценка пробного прохода или null
+        final AcceptanceMap.Sample sample; // Вид, выбранный картой приемлемости, или null
+        final KeyAttemptEvent event; // Событие JFR попытки
+        IterationField field; // Поле итераций из пула
+        Palette palette; // Палитра кадра
+        int index; // Номер ключа, присваивается после проверки
+
+        Job(MandelbrotParams params, DiversityProbe.Estimate estimate, AcceptanceMap.Sample sample,
+            KeyAttemptEvent event) {
+            this.params = params;
+            this.estimate = estimate;
+            this.sample = sample;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Конструктор класса KeyBatchGenerator.
+     *
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     * @param inFlight Количество ключей, обрабатываемых одновременно.
+     * @param encoders Количество потоков кодирования PNG.
+     */
+    public KeyBatchGenerator(RenderScheduler scheduler, EscapeKernel kernel, int inFlight, int encoders) {
+        this.scheduler = scheduler;
+        this.kernel = kernel;
+        this.probe = new DiversityProbe(scheduler, DiversityProbe.DEFAULT_STRIDE);
+        this.inFlight = inFlight;
+        this.encoders = encoders;
+    }
+
+    public void setUseProbe(boolean useProbe) {
+        this.useProbe = useProbe;
+    }
+
+    /**
+     * Включает продолжение прерванного прогона: ключи, записанные в журнал RunManifest и прошедшие проверку,
+     * не генерируются повторно.
+     *
+     * @param resume true, чтобы продолжить прогон.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Включает выбор видов по карте приемлемости.
+     *
+     * @param acceptanceMap Карта приемлемости или null для равномерного выбора.
+     */
+    public void setAcceptanceMap(AcceptanceMap acceptanceMap) {
+        this.acceptanceMap = acceptanceMap;
+    }
+
+    /**
+     * Включает подбор MAX_ITER по детализации вида.
+     *
+     * @param maxIterEstimator Оценка MAX_ITER или null, чтобы оставить случайное значение.
+     */
+    public void setMaxIterEstimator(MaxIterEstimator maxIterEstimator) {
+        this.maxIterEstimator = maxIterEstimator;
+    }
+
+    /**
+     * Выбирает формат сохранения ключей.
+     *
+     * @param raw true, чтобы сохранять поле итераций в контейнер .mbk без раскраски и сжатия.
+     */
+    public void setRaw(boolean raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Создает поток стадии конвейера. Непроверяемое исключение стадии сохраняется в failure, а ожидание saved
+     * снимается, чтобы generate не ждал вечно и выбросил это исключение.
+     */
+    private static Thread stage(Runnable body, String name, AtomicReference<Throwable> failure, CountDownLatch saved) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                while (saved.getCount() > 0) {
+                    saved.countDown();
+                }
+            }
+        }, name);
+    }
+
+    /**
+     * Генерирует указанное количество ключей и сохраняет их в папку.
+     *
+     * @param count Количество ключей.
+     * @param outputDir Папка для сохранения PNG.
+     * @throws InterruptedException Если ожидание было прервано.
+     * @throws IOException Если не удалось создать папку.
+     * @throws IllegalStateException Если ключи не удалось записать MAX_WRITE_FAILURES раз подряд.
+     */
+    public void generate(int count, String outputDir) throws InterruptedException, IOException {
+        RunManifest manifest = RunManifest.open(Paths.get(outputDir), resume);
+        int[] pending = manifest.pendingIndices(count);
+
+        // Емкость очередей не меньше количества полей, поэтому обратные вызовы рендеринга никогда не блокируются
+        BlockingQueue<IterationField> free = new ArrayBlockingQueue<>(inFlight);
+        BlockingQueue<Job> sampled = new ArrayBlockingQueue<>(inFlight);
+        BlockingQueue<Job> done = new ArrayBlockingQueue<>(inFlight);
+        BlockingQueue<Job> accepted = new ArrayBlockingQueue<>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            free.add(new IterationField(new MandelbrotParams(WIDTH, HEIGHT, 1, 1, 0, 0)));
+        }
+
+        AtomicInteger nextIndex = new AtomicInteger();
+        Queue<Integer> retried = new ConcurrentLinkedQueue<>(); // Номера ключей, которые не удалось записать
+        AtomicInteger writeFailures = new AtomicInteger(); // Ошибок записи подряд
+        CountDownLatch saved = new CountDownLatch(pending.length);
+        AtomicReference<Throwable> failure = new AtomicReference<>(); // Ошибка, остановившая стадию
+        List<Thread> stages = new ArrayList<>();
+
+        stages.add(stage(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                KeyAttemptEvent event = new KeyAttemptEvent();
+                event.begin();
+                AcceptanceMap.Sample sample = acceptanceMap != null ? acceptanceMap.next(WIDTH, HEIGHT) : null;
+                MandelbrotParams params = sample != null ? sample.params : sampler.next(WIDTH, HEIGHT);
+                if (maxIterEstimator != null) {
+                    params = maxIterEstimator.apply(params);
+                }
+                attempts.incrementAndGet();
+                metrics.recordAttempt();
+                DiversityProbe.Estimate estimate = null;
+                if (useProbe) {
+                    estimate = probe.probe(params, kernel);
+                    if (!estimate.likelyValid && !probe.shouldAudit()) {
+                        if (sample != null) {
+                            acceptanceMap.record(sample, params, false);
+                        }
+                        metrics.recordProbeRejection();
+                        event.finish(params, "PROBE", false);
+                        continue;
+                    }
+                }
+                try {
+                    sampled.put(new Job(params, estimate, sample, event));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "key-sampler", failure, saved));
+
+        stages.add(stage(() -> {
+            try {
+                while (true) {
+                    Job job = sampled.take();
+                    job.field = free.take().reuse(job.params);
+                    job.palette = Palette.classic(job.params.MAX_ITER);
+                    scheduler.render(job.field, kernel, true).whenComplete((field, e) -> {
+                        if (e != null) {
+                            e.printStackTrace();
+                            free.add(job.field);
+                        } else {
+                            rendered.incrementAndGet();
+                            renderedPixels.addAndGet(field.getRenderedPixels());
+                            savedPixels.addAndGet((long) WIDTH * HEIGHT - field.getRenderedPixels());
+                            done.add(job);
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                // Конвейер остановлен
+            }
+        }, "key-renderer", failure, saved));
+
+        stages.add(stage(() -> {
+            try {
+                while (true) {
+                    Job job = done.take();
+                    DiversityCheck.Rejection rejection = DiversityCheck.reason(job.field, job.palette);
+                    boolean valid = rejection == null;
+                    metrics.recordVerdict(job.field, rejection);
+                    job.event.finish(job.params, valid ? "ACCEPTED" : rejection.name(), job.field.isAborted());
+                    if (job.estimate != null) {
+                        probe.record(job.estimate, valid);
+                    }
+                    if (job.sample != null) {
+                        acceptanceMap.record(job.sample, job.params, valid);
+                    }
+                    if (valid) {
+                        Integer index = retried.poll(); // Сначала ключи, которые не удалось записать
+                        if (index == null) {
+                            int slot = nextIndex.getAndIncrement();
+                            index = slot < pending.length ? pending[slot] : null;
+                        }
+                        if (index != null) {
+                            job.index = index;
+                            accepted.put(job);
+                            continue;
+                        }
+                    }
+                    free.put(job.field);
+                }
+            } catch (InterruptedException e) {
+                // Конвейер остановлен
+            }
+        }, "key-checker", failure, saved));
+
+        for (int i = 0; i < encoders; i++) {
+            stages.add(stage(() -> {
+                FrameBuffer frame = new FrameBuffer(WIDTH, HEIGHT);
+                try {
+                    while (true) {
+                        Job job = accepted.take();
+                        File outputFile;
+                        IOException error = null;
+                        try {
+                            String fileName = raw ? job.params.fileName(job.index, KeyImage.EXTENSION)
+                                    : job.params.fileName(job.index);
+                            Path temp = manifest.tempFile(fileName);
+                            if (raw) {
+                                KeyImage.write(temp, job.field);
+                            } else {
+                                job.palette.colorize(job.field, frame, scheduler).join();
+                                ImageIO.write(frame.getImage(), "png", temp.toFile());
+                            }
+                            manifest.commit(job.index, job.params, fileName);
+                            outputFile = new File(outputDir, fileName);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            outputFile = null;
+                            error = e;
+                        }
+                        free.put(job.field);
+                        if (outputFile != null) {
+                            writeFailures.set(0);
+                            metrics.recordKeyCompleted();
+                            System.out.println("Ключ №" + job.index + " сохранен: " + outputFile.getName());
+                            saved.countDown();
+                        } else if (writeFailures.incrementAndGet() >= MAX_WRITE_FAILURES) {
+                            throw new IllegalStateException("Не удалось записать " + MAX_WRITE_FAILURES
+                                    + " ключа подряд", error);
+                        } else {
+                            retried.add(job.index); // Ключ с этим номером будет сгенерирован заново
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Конвейер остановлен
+                }
+            }, "key-encoder-" + i, failure, saved));
+        }
+
+        metrics.registerQueue("sampled", sampled);
+        metrics.registerQueue("done", done);
+        metrics.registerQueue("accepted", accepted);
+        long start = System.nanoTime();
+        for (Thread stage : stages) {
+            stage.setDaemon(true);
+            stage.start();
+        }
+        saved.await();
+        // Стадии останавливаются до возврата, чтобы ни одна не отправила задачу в уже остановленный пул
+        for (Thread stage : stages) {
+            stage.interrupt();
+        }
+        for (Thread stage : stages) {
+            stage.join();
+        }
+        for (String queue : new String[]{"sampled", "done", "accepted"}) {
+            metrics.unregisterQueue(queue);
+        }
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error != null) {
+            throw (Error) error;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Сохранено ключей: %d за %.1f с (%.2f ключей/с), видов: %d, полных рендерингов: %d%n",
+                pending.length, seconds, pending.length / seconds, attempts.get(), rendered.get());
+        System.out.println("Готово ключей по журналу: " + manifest.getCompletedCount() + " из " + count);
+        System.out.printf("Досрочная остановка сэкономила %.1f%% пикселей полных рендерингов%n",
+                100.0 * savedPixels.get() / Math.max(1, renderedPixels.get() + savedPixels.get()));
+        if (useProbe) {
+            probe.printReport();
+        }
+        if (acceptanceMap != null) {
+            acceptanceMap.printReport();
+        }
+        if (maxIterEstimator != null) {
+            maxIterEstimator.printReport();
+        }
+    }
+
+    /**
+     * Точка входа пакетной генерации.
+     * Аргументы: [количество ключей] [папка] [ключей в обработке] [потоков кодирования] [png|mbk] [resume].
+     *
+     * @param args Аргументы командной строки.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        System.setProperty("java.awt.headless", "true");
+        RenderMetrics.register();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        String outputDir = args.length > 1 ? args[1] : "sv";
+        int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(3, cores);
+        int encoders = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(1, cores / 4);
+
+        RenderScheduler scheduler = RenderScheduler.getShared();
+        EscapeKernel kernel = KernelSelector.select(new InteriorCullingKernel());
+        KeyBatchGenerator generator = new KeyBatchGenerator(scheduler, kernel, inFlight, encoders);
+        generator.setRaw(args.length > 4 && args[4].equals(KeyImage.EXTENSION));
+        generator.setResume(args.length > 5 && args[5].equals("resume"));
+        Path mapFile = Paths.get(AcceptanceMap.DEFAULT_FILE);
+        AcceptanceMap acceptanceMap = AcceptanceMap.load(mapFile);
+        generator.setAcceptanceMap(acceptanceMap);
+        generator.setMaxIterEstimator(new MaxIterEstimator(scheduler, kernel, MaxIterEstimator.DEFAULT_STRIDE));
+        generator.generate(count, outputDir);
+        acceptanceMap.save(mapFile);
+        scheduler.shutdown();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,247 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Класс KeyCache — двухуровневый кэш ключевых изображений, выводимых из зерна.
+ * Ключ для зерна выводится детерминированно: виды берутся из ViewSampler с этим зерном, пока один из них
+ * не пройдет проверку разнообразия DiversityCheck. Настраиваемые пороги DiversityProbe при выводе не используются,
+ * поэтому ключ зависит только от зерна и версии процедуры DERIVATION_VERSION.
+ *
+ * Первый уровень — LRU раскрашенных кадров в памяти. Второй — папка на диске, где поле итераций хранится
+ * в контейнере KeyImage под именем SHA-256 от параметров кадра, а файл seed_v<версия>_<зерно>.ref указывает на этот хэш.
+ * Суммарный размер контейнеров ограничен: при превышении удаляются давно не использованные (по времени изменения,
+ * которое обновляется при каждом попадании).
+ */
+public class KeyCache {
+    public static final int DERIVATION_VERSION = 1; // Версия вывода ключа; меняется вместе с ViewSampler и DiversityCheck
+    private static final String REF_SUFFIX = ".ref"; // Расширение файлов ссылок зерно -> хэш
+    private static final int WIDTH = 1024; // Ширина ключевого изображения
+    private static final int HEIGHT = 720; // Высота ключевого изображения
+
+    private final Path dir; // Папка дискового уровня
+    private final long maxDiskBytes; // Допустимый суммарный размер контейнеров на диске
+    private final RenderScheduler scheduler; // Планировщик рендеринга
+    private final EscapeKernel kernel; // Ядро подсчета времени выхода
+    private final Map<String, BufferedImage> memory; // LRU раскрашенных кадров по хэшу параметров
+
+    private long memoryHits; // Попадания в память
+    private long diskHits; // Попадания на диск
+    private long misses; // Промахи, потребовавшие рендеринга
+    private long evictions; // Удаленные с диска контейнеры
+
+    /**
+     * Конструктор класса KeyCache.
+     *
+     * @param dir Папка дискового уровня.
+     * @param memoryEntries Количество кадров в памяти.
+     * @param maxDiskBytes Допустимый суммарный размер контейнеров на диске в байтах.
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     * @throws IOException Если папку не удалось создать.
+     */
+    public KeyCache(Path dir, int memoryEntries, long maxDiskBytes, RenderScheduler scheduler, EscapeKernel kernel)
+            throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxDiskBytes = maxDiskBytes;
+        this.scheduler = scheduler;
+        this.kernel = kernel;
+        this.memory = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    /**
+     * Возвращает ключевое изображение для зерна, выводя и рендеря его только при первом обращении.
+     *
+     * @param seed Зерно ключа.
+     * @return Ключевое изображение.
+     * @throws IOException Если не удалось прочитать или записать дисковый уровень.
+     */
+    public synchronized BufferedImage get(long seed) throws IOException {
+        Path ref = dir.resolve("seed_v" + DERIVATION_VERSION + "_" + seed + REF_SUFFIX);
+        if (Files.exists(ref)) {
+            String hash = Files.readString(ref, StandardCharsets.US_ASCII).trim();
+            BufferedImage image = lookup(hash);
+            if (image != null) {
+                return image;
+            }
+        }
+
+        misses++;
+        IterationField field = derive(seed);
+        String hash = hash(field.getParams());
+        store(hash, field);
+        Files.writeString(ref, hash, StandardCharsets.US_ASCII);
+        return memory.get(hash);
+    }
+
+    /**
+     * Возвращает ключевое изображение для заданных параметров кадра (без проверки разнообразия).
+     *
+     * @param params Параметры кадра.
+     * @return Ключевое изображение.
+     * @throws IOException Если не удалось прочитать или записать дисковый уровень.
+     */
+    public synchronized BufferedImage get(MandelbrotParams params) throws IOException {
+        String hash = hash(params);
+        BufferedImage image = lookup(hash);
+        if (image == null) {
+            misses++;
+            IterationField field = new IterationField(params);
+            render(field, false);
+            store(hash, field);
+            image = memory.get(hash);
+        }
+        return image;
+    }
+
+    /**
+     * Детерминированно выводит ключ из зерна.
+     *
+     * @param seed Зерно ключа.
+     * @return Поле итераций первого вида, прошедшего проверку разнообразия.
+     */
+    public IterationField derive(long seed) {
+        return derive(seed, WIDTH, HEIGHT, scheduler, kernel);
+    }
+
+    /**
+     * Единственная процедура вывода ключа из зерна: ее используют и кэш, и Mandelbrot с зерном, поэтому одно
+     * зерно дает один и тот же ключ на обоих путях. Виды берутся из ViewSampler с генератором new Random(seed),
+     * пока один из них не пройдет проверку разнообразия с постоянными порогами DiversityCheck. Любое изменение,
+     * которое меняет результат для того же зерна, должно увеличивать DERIVATION_VERSION.
+     *
+     * @param seed Зерно ключа.
+     * @param width Ширина кадра.
+     * @param height Высота кадра.
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     * @return Поле итераций первого вида, прошедшего проверку разнообразия.
+     */
+    public static IterationField derive(long seed, int width, int height, RenderScheduler scheduler,
+                                        EscapeKernel kernel) {
+        ViewSampler sampler = new ViewSampler(new Random(seed));
+        IterationField field = null;
+        while (true) {
+            MandelbrotParams params = sampler.next(width, height);
+            field = field == null ? new IterationField(params) : field.reuse(params);
+            try {
+                scheduler.render(field, kernel, true).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Ошибка рендеринга ключа", e);
+            }
+            if (DiversityCheck.check(field, Palette.classic(params.MAX_ITER))) {
+                return field;
+            }
+        }
+    }
+
+    /**
+     * Вычисляет адрес кадра в кэше: SHA-256 от размеров, MAX_ITER, ZOOM и смещений (точные биты double).
+     *
+     * @param params Параметры кадра.
+     * @return Хэш в шестнадцатеричном виде.
+     */
+    public static String hash(MandelbrotParams params) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String canonical = params.width + ":" + params.height + ":" + params.MAX_ITER + ":"
+                    + Double.doubleToLongBits(params.ZOOM) + ":" + Double.doubleToLongBits(params.offsetX) + ":"
+                    + Double.doubleToLongBits(params.offsetY);
+            byte[] bytes = digest.digest(canonical.getBytes(StandardCharsets.US_ASCII));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Выводит в консоль статистику работы кэша.
+     */
+    public synchronized void printReport() {
+        System.out.println("Кэш ключей: попаданий в память " + memoryHits + ", на диск " + diskHits
+                + ", промахов " + misses + ", удалено с диска " + evictions);
+    }
+
+    private BufferedImage lookup(String hash) throws IOException {
+        BufferedImage image = memory.get(hash);
+        if (image != null) {
+            memoryHits++;
+            return image;
+        }
+        Path file = dir.resolve(hash + "." + KeyImage.EXTENSION);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        diskHits++;
+        image = KeyImage.map(file).toImage();
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        memory.put(hash, image);
+        return image;
+    }
+
+    private void store(String hash, IterationField field) throws IOException {
+        KeyImage.write(dir.resolve(hash + "." + KeyImage.EXTENSION), field);
+        memory.put(hash, Palette.classic(field.getParams().MAX_ITER).toImage(field, scheduler));
+        evict();
+    }
+
+    private void render(IterationField field, boolean earlyAbort) {
+        try {
+            scheduler.render(field, kernel, earlyAbort).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Ошибка рендеринга ключа", e);
+        }
+    }
+
+    /**
+     * Удаляет давно не использованные контейнеры, пока их суммарный размер превышает maxDiskBytes.
+     * Ссылки зерен на удаленные контейнеры остаются: при обращении такой ключ просто выводится заново.
+     */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*." + KeyImage.EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+                total += Files.size(file);
+            }
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        Map<Path, FileTime> times = new LinkedHashMap<>();
+        for (Path file : files) {
+            times.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+        for (Path file : files) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            total -= Files.size(file);
+            Files.delete(file);
+            evictions++;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,381 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Класс KeyImage — несжатый контейнер ключевого изображения (расширение .mbk), который читается отображением файла
+ * в память (FileChannel.map) без какого-либо декодирования. Файл состоит из заголовка HEADER_SIZE байт
+ * с параметрами кадра и данных по строкам в порядке little-endian:
+ * либо цвета 0xRRGGBB по 4 байта на пиксель (KIND_RGB), либо поле итераций по 2 байта на пиксель (KIND_FIELD).
+ * Поле итераций вдвое меньше и раскрашивается при чтении классической палитрой.
+ *
+ * Заголовок: magic "MBK1", вид данных, ширина, высота, MAX_ITER, резерв, ZOOM, offsetX, offsetY (double), резерв.
+ * Класс также импортирует и экспортирует PNG, чтобы существующие ключи продолжали работать.
+ */
+public class KeyImage {
+    public static final String EXTENSION = "mbk"; // Расширение файлов контейнера
+    public static final int KIND_RGB = 1; // Данные — цвета 0xRRGGBB
+    public static final int KIND_FIELD = 2; // Данные — поле оставшихся итераций
+
+    private static final int MAGIC = 0x314B424D; // "MBK1" в порядке little-endian
+    private static final int HEADER_SIZE = 64; // Размер заголовка в байтах
+    private static final Pattern FILE_NAME = Pattern.compile(
+            "i=(\\d+)_ZOOM=(-?\\d+[.,]\\d+)_MAX_ITER=(\\d+)_offsetX=(-?\\d+[.,]\\d+)_offsetY=(-?\\d+[.,]\\d+)");
+    private static final Pattern EXACT_OFFSETS = Pattern.compile(
+            "_exactX=(-?\\d+(?:\\.\\d+)?)_exactY=(-?\\d+(?:\\.\\d+)?)");
+
+    private final MandelbrotParams params; // Параметры кадра из заголовка
+    private final int kind; // Вид данных
+    private final ByteBuffer data; // Отображенные в память данные без заголовка
+
+    private KeyImage(MandelbrotParams params, int kind, ByteBuffer data) {
+        this.params = params;
+        this.kind = kind;
+        this.data = data;
+    }
+
+    /**
+     * Отображает файл контейнера в память. Данные не копируются и не декодируются. Заголовок проверяется
+     * до отображения данных: magic, вид, положительные размеры, MAX_ITER в (0, IterationField.MAX_SUPPORTED_ITER]
+     * и размер файла ровно HEADER_SIZE + пиксели; в поле итераций проверяется, что счетчики не больше MAX_ITER.
+     *
+     * @param path Путь к файлу .mbk.
+     * @return Ключевое изображение поверх отображенного файла.
+     * @throws IOException Если файл не удалось прочитать или он поврежден.
+     */
+    public static KeyImage map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Файл " + path + " не является контейнером ключа");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Файл " + path + " не является контейнером ключа");
+            }
+            int kind = header.getInt(4);
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int maxIter = header.getInt(16);
+            if ((kind != KIND_RGB && kind != KIND_FIELD) || width <= 0 || height <= 0
+                    || maxIter <= 0 || maxIter > IterationField.MAX_SUPPORTED_ITER) {
+                throw new IOException("Файл " + path + " поврежден: вид " + kind + ", размер " + width + "x" + height
+                        + ", MAX_ITER " + maxIter);
+            }
+            long expected = HEADER_SIZE + (long) width * height * (kind == KIND_FIELD ? 2 : 4);
+            if (size != expected || size > Integer.MAX_VALUE) {
+                throw new IOException("Файл " + path + " поврежден: размер " + size + " вместо " + expected);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            MandelbrotParams params = new MandelbrotParams(width, height, header.getDouble(24), maxIter,
+                    header.getDouble(32), header.getDouble(40));
+            ByteBuffer data = body(buffer);
+            if (kind == KIND_FIELD) {
+                ShortBuffer counts = data.asShortBuffer();
+                for (int i = 0; i < counts.limit(); i++) {
+                    if ((counts.get(i) & 0xFFFF) > maxIter) {
+                        throw new IOException("Файл " + path + " поврежден: счетчик пикселя " + i + " больше MAX_ITER");
+                    }
+                }
+            }
+            return new KeyImage(params, kind, data);
+        }
+    }
+
+    /**
+     * Записывает цвета кадра в контейнер.
+     *
+     * @param path Путь к файлу .mbk.
+     * @param image Изображение ключа.
+     * @param params Параметры кадра.
+     * @throws IOException Если файл не удалось записать.
+     */
+    public static void write(Path path, BufferedImage image, MandelbrotParams params) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getType() == BufferedImage.TYPE_INT_RGB
+                ? new FrameBuffer(image).getPixels()
+                : image.getRGB(0, 0, width, height, null, 0, width);
+        ByteBuffer buffer = header(KIND_RGB, width, height, params, (long) width * height * 4);
+        IntBuffer body = body(buffer).asIntBuffer();
+        for (int i = 0; i < pixels.length; i++) {
+            body.put(i, pixels[i] & 0xFFFFFF);
+        }
+        writeBuffer(path, buffer);
+    }
+
+    /**
+     * Записывает поле итераций в контейнер. Параметры кадра берутся из поля.
+     *
+     * @param path Путь к файлу .mbk.
+     * @param field Поле итераций.
+     * @throws IOException Если файл не удалось записать.
+     */
+    public static void write(Path path, IterationField field) throws IOException {
+        MandelbrotParams params = field.getParams();
+        ByteBuffer buffer = header(KIND_FIELD, params.width, params.height, params, (long) params.width * params.height * 2);
+        body(buffer).asShortBuffer().put(field.getCounts());
+        writeBuffer(path, buffer);
+    }
+
+    private static ByteBuffer header(int kind, int width, int height, MandelbrotParams params, long dataSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(HEADER_SIZE + dataSize)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, kind);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+        buffer.putInt(16, params.MAX_ITER);
+        buffer.putDouble(24, params.ZOOM);
+        buffer.putDouble(32, params.offsetX);
+        buffer.putDouble(40, params.offsetY);
+        return buffer;
+    }
+
+    private static ByteBuffer body(ByteBuffer buffer) {
+        return buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeBuffer(Path path, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.position(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Читает ключевое изображение из контейнера .mbk или из любого формата, поддерживаемого ImageIO (PNG, BMP).
+     *
+     * @param path Путь к файлу.
+     * @return Изображение типа TYPE_INT_RGB для контейнера либо результат ImageIO.read (null, если формат не распознан).
+     * @throws IOException Если файл не удалось прочитать.
+     */
+    public static BufferedImage readImage(Path path) throws IOException {
+        if (isKeyFile(path)) {
+            return map(path).toImage();
+        }
+        return ImageIO.read(path.toFile());
+    }
+
+    /**
+     * Читает размеры изображения без декодирования пикселей: из заголовка контейнера .mbk или через ImageReader.
+     *
+     * @param path Путь к файлу.
+     * @return Ширина и высота изображения.
+     * @throws IOException Если файл не удалось прочитать или его формат не распознан.
+     */
+    public static Dimension readSize(Path path) throws IOException {
+        if (isKeyFile(path)) {
+            KeyImage image = map(path);
+            return new Dimension(image.getWidth(), image.getHeight());
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Формат файла " + path + " не распознан");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Проверяет, является ли файл контейнером ключа, по расширению.
+     *
+     * @param path Путь к файлу.
+     * @return true для файлов .mbk.
+     */
+    public static boolean isKeyFile(Path path) {
+        return path.getFileName().toString().endsWith("." + EXTENSION);
+    }
+
+    /**
+     * Импортирует PNG в контейнер. Параметры кадра восстанавливаются из имени файла, если оно имеет вид,
+     * который дает MandelbrotParams.fileName; иначе сохраняются только размеры.
+     *
+     * @param png Путь к PNG.
+     * @param target Путь к файлу .mbk.
+     * @throws IOException Если файл не удалось прочитать или записать.
+     */
+    public static void importPng(Path png, Path target) throws IOException {
+        BufferedImage image = ImageIO.read(png.toFile());
+        if (image == null) {
+            throw new IOException("Не удалось декодировать " + png);
+        }
+        write(target, image, parseFileName(png.getFileName().toString(), image.getWidth(), image.getHeight()));
+    }
+
+    /**
+     * Экспортирует контейнер в PNG.
+     *
+     * @param source Путь к файлу .mbk.
+     * @param png Путь к PNG.
+     * @throws IOException Если файл не удалось прочитать или записать.
+     */
+    public static void exportPng(Path source, Path png) throws IOException {
+        ImageIO.write(map(source).toImage(), "png", png.toFile());
+    }
+
+    /**
+     * Восстанавливает параметры кадра из имени файла ключа.
+     *
+     * @param fileName Имя файла.
+     * @param width Ширина кадра.
+     * @param height Высота кадра.
+     * @return Параметры кадра; если имя не распознано, ZOOM, MAX_ITER и смещения равны нулю.
+     */
+    public static MandelbrotParams parseFileName(String fileName, int width, int height) {
+        Matcher matcher = FILE_NAME.matcher(fileName);
+        if (!matcher.find()) {
+            return new MandelbrotParams(width, height, 0, 0, 0, 0);
+        }
+        BigDecimal[] exact = parseExactOffsets(fileName);
+        return new MandelbrotParams(width, height,
+                Double.parseDouble(matcher.group(2).replace(',', '.')),
+                Integer.parseInt(matcher.group(3)),
+                exact != null ? exact[0].doubleValue() : Double.parseDouble(matcher.group(4).replace(',', '.')),
+                exact != null ? exact[1].doubleValue() : Double.parseDouble(matcher.group(5).replace(',', '.')));
+    }
+
+    /**
+     * Восстанавливает точные смещения ключа глубокого масштаба из имени файла.
+     *
+     * @param fileName Имя файла.
+     * @return Смещения {offsetX, offsetY} или null, если точные смещения в имени не записаны.
+     */
+    public static BigDecimal[] parseExactOffsets(String fileName) {
+        Matcher matcher = EXACT_OFFSETS.matcher(fileName);
+        if (!matcher.find()) {
+            return null;
+        }
+        return new BigDecimal[]{new BigDecimal(matcher.group(1)), new BigDecimal(matcher.group(2))};
+    }
+
+    public MandelbrotParams getParams() {
+        return params;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public int getWidth() {
+        return params.width;
+    }
+
+    public int getHeight() {
+        return params.height;
+    }
+
+    /**
+     * Возвращает цвета кадра прямо из отображенного файла, без копирования.
+     *
+     * @return Цвета 0xRRGGBB по строкам.
+     * @throws IllegalStateException Если контейнер хранит поле итераций.
+     */
+    public IntBuffer pixelBuffer() {
+        if (kind != KIND_RGB) {
+            throw new IllegalStateException("Контейнер хранит поле итераций, а не цвета");
+        }
+        return data.asIntBuffer();
+    }
+
+    /**
+     * Возвращает поле итераций прямо из отображенного файла, без копирования.
+     *
+     * @return Оставшиеся итерации по строкам (читать через & 0xFFFF).
+     * @throws IllegalStateException Если контейнер хранит цвета.
+     */
+    public ShortBuffer countBuffer() {
+        if (kind != KIND_FIELD) {
+            throw new IllegalStateException("Контейнер хранит цвета, а не поле итераций");
+        }
+        return data.asShortBuffer();
+    }
+
+    /**
+     * Копирует поле итераций в новое поле.
+     *
+     * @return Поле итераций с параметрами из заголовка.
+     */
+    public IterationField toField() {
+        IterationField field = new IterationField(params);
+        countBuffer().get(0, field.getCounts());
+        return field;
+    }
+
+    /**
+     * Копирует кадр в новое изображение типа TYPE_INT_RGB. Поле итераций раскрашивается классической палитрой.
+     *
+     * @return Изображение ключа.
+     */
+    public BufferedImage toImage() {
+        FrameBuffer frame = new FrameBuffer(params.width, params.height);
+        int[] pixels = frame.getPixels();
+        if (kind == KIND_RGB) {
+            pixelBuffer().get(0, pixels);
+        } else {
+            int[] table = Palette.classic(params.MAX_ITER).getTable();
+            ShortBuffer counts = countBuffer();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = table[counts.get(i) & 0xFFFF];
+            }
+        }
+        return frame.getImage();
+    }
+
+    /**
+     * Конвертирует все ключи папки между PNG и контейнером .mbk.
+     * Аргументы: import|export [папка].
+     *
+     * @param args Аргументы командной строки.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean toRaw = args.length == 0 || args[0].equals("import");
+        Path dir = Paths.get(args.length > 1 ? args[1] : "sv");
+        String from = toRaw ? "png" : EXTENSION;
+        String to = toRaw ? EXTENSION : "png";
+        int converted = 0;
+        long start = System.nanoTime();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*." + from)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Path target = file.resolveSibling(name.substring(0, name.length() - from.length()) + to);
+                if (toRaw) {
+                    importPng(file, target);
+                } else {
+                    exportPng(file, target);
+                }
+                converted++;
+            }
+        }
+        System.out.printf("Сконвертировано файлов %s -> %s: %d за %d мс%n", from, to, converted,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
\ No newline at end of file
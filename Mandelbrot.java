@@ -6,12 +6,11 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Random;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Класс Mandelbrot представляет собой графический компонент Swing, который генерирует изображение множества Мандельброта.
@@ -26,10 +25,39 @@ public class Mandelbrot extends JPanel {
     private double offsetX; // Смещение по оси X
     private double offsetY; // Смещение по оси Y
     private BufferedImage image; // Изображение для записи результатов
+    private FrameBuffer frame; // Буфер кадра, переиспользуемый между попытками
+    private IterationField field; // Поле итераций, переиспользуемое между попытками
+    private final ViewSampler sampler; // Выбор случайного вида
+    private final Long keySeed; // Зерно ключей или null для случайных видов
     private int segmentWidthSize; // Ширина сегмента
     private int segmentHeightSize; // Высота сегмента
     private int[] segmentIndices; // Индексы сегментов изображения
     private int numberSave = 0;
+    private final RenderScheduler scheduler = RenderScheduler.getShared(); // Планировщик рендеринга по плиткам
+    private final DiversityProbe probe = new DiversityProbe(scheduler, DiversityProbe.DEFAULT_STRIDE); // Пробный проход
+    private boolean useProbe = true; // Выполнять ли пробный проход перед полным рендерингом
+    private EscapeKernel kernel = EscapeKernel.CLASSIC; // Ядро подсчета времени выхода
+    private RenderMode renderMode = RenderMode.TILES; // Способ рендеринга кадра
+    private boolean verifySubdivision = false; // Сравнивать ли деление прямоугольников с полным перебором
+    private double deepZoom = 1e30; // Целевой масштаб в режиме теории возмущений
+    private DeepZoomRenderer deepZoomRenderer; // Рендерер глубоких масштабов, создается при первом использовании
+    private long renderedPixels; // Пиксели, посчитанные полными рендерингами
+    private AcceptanceMap acceptanceMap; // Карта приемлемости видов или null для равномерного выбора
+    private Path acceptanceMapFile; // Файл, в который сохраняется карта приемлемости
+    private AcceptanceMap.Sample lastSample; // Последний вид, выбранный картой
+    private MaxIterEstimator maxIterEstimator; // Оценка MAX_ITER по виду или null для случайного MAX_ITER
+    private RunManifest manifest; // Журнал прогона или null
+    private long requestedPixels; // Пиксели, которые полные рендеринги посчитали бы без досрочной остановки
+    private final RenderMetrics metrics = RenderMetrics.getShared(); // Метрики JMX
+
+    /**
+     * Способ рендеринга кадра.
+     */
+    public enum RenderMode {
+        TILES, // Полный перебор всех пикселей по плиткам
+        MARIANI_SILVER, // Рекурсивное деление прямоугольников с заливкой однородных областей
+        PERTURBATION // Глубокий масштаб: опорная орбита в произвольной точности и отклонения пикселей в double
+    }
 
     private static final int ARRAY_SIZE = 500;
     double[] zX_vals = new double[ARRAY_SIZE];
@@ -44,15 +72,33 @@ public class Mandelbrot extends JPanel {
      * Инициализирует компонент и добавляет обработчик событий мыши для повторной генерации изображения.
      */
     public Mandelbrot() {
+        this(new Random(), null);
+    }
+
+    /**
+     * Конструктор класса Mandelbrot с зерном: ключ номер j выводится процедурой KeyCache.derive из зерна seed + j
+     * и совпадает с ключом, который кэш ключей выводит из того же зерна, поэтому ключи можно получить повторно
+     * без PNG. Параметры, меняющие выбор или рендеринг вида (способ рендеринга, глубокий масштаб, карта
+     * приемлемости, оценка MAX_ITER), с зерном не применяются, и их установка бросает IllegalArgumentException.
+     *
+     * @param seed Зерно ключей.
+     */
+    public Mandelbrot(long seed) {
+        this(new Random(seed), seed);
+    }
+
+    private Mandelbrot(Random random, Long keySeed) {
+        this.keySeed = keySeed;
         this.startMandelbrotWidth = 1024; // Устанавливаем начальные значения ширины и высоты
         this.startMandelbrotHeight = 720;
 
         for (int i = 0; i < ARRAY_SIZE; i++) {
-            zX_vals[i] = 5 * (2 * Math.random() - 1); // от -5 до 5
-            zY_vals[i] = 5 * (2 * Math.random() - 1); // от -5 до 5
-            cX_vals[i] = 1024 * (Math.random() - 0.5); // от -512 до 512
-            cY_vals[i] = 768 * (Math.random() - 0.5); // от -384 до 384
+            zX_vals[i] = 5 * (2 * random.nextDouble() - 1); // от -5 до 5
+            zY_vals[i] = 5 * (2 * random.nextDouble() - 1); // от -5 до 5
+            cX_vals[i] = 1024 * (random.nextDouble() - 0.5); // от -512 до 512
+            cY_vals[i] = 768 * (random.nextDouble() - 0.5); // от -384 до 384
         }
+        this.sampler = new ViewSampler(random);
 
         addMouseListener(new MouseAdapter() {
             @Override
@@ -85,11 +131,20 @@ public class Mandelbrot extends JPanel {
         //ZOOM = 300;
         //offsetX = 0; // Смещение по оси X
         //offsetY = 0; // Смещение по оси Y
-        Random random = new Random();
-        MAX_ITER = 500 + (random.nextInt(91) * 8); // 91 для диапазона от 0 до 90, чтобы получить 300, 310 и до 1200
-        offsetX = -0.9998 + (random.nextDouble() * (0.9998 - -0.9998));
-        offsetY = -0.9998 + (random.nextDouble() * (0.9998 - -0.9998));
-        ZOOM = 100000 + (random.nextInt(44) * 1000);
+        MandelbrotParams params;
+        if (acceptanceMap != null) {
+            lastSample = acceptanceMap.next(startMandelbrotWidth, startMandelbrotHeight);
+            params = lastSample.params;
+        } else {
+            params = sampler.next(startMandelbrotWidth, startMandelbrotHeight);
+        }
+        if (maxIterEstimator != null) {
+            params = maxIterEstimator.apply(params);
+        }
+        MAX_ITER = params.MAX_ITER;
+        offsetX = params.offsetX;
+        offsetY = params.offsetY;
+        ZOOM = params.ZOOM;
         repaint();
     }
 
@@ -103,97 +158,275 @@ public class Mandelbrot extends JPanel {
         int attempt = 0;
 
         for (int j = 0; j < ARRAY_SIZE; j++) {
+            if (manifest != null && manifest.isCompleted(j)) {
+                continue; // Ключ уже записан в предыдущем запуске
+            }
             validImage = false; // Устанавливаем validImage в false в начале каждой новой итерации
+            BigDecimal[] keyOffsets = null; // Точные смещения принятого ключа глубокого масштаба
+            if (keySeed != null) {
+                // Перебор видов внутри derive не виден снаружи, поэтому ключ учитывается одной попыткой
+                attempt++;
+                KeyAttemptEvent event = new KeyAttemptEvent();
+                event.begin();
+                metrics.recordAttempt();
+                field = KeyCache.derive(keySeed + j, startMandelbrotWidth, startMandelbrotHeight, scheduler, kernel);
+                metrics.recordVerdict(field, null);
+                event.finish(field.getParams(), "ACCEPTED", field.isAborted());
+                if (frame == null || !frame.fits(startMandelbrotWidth, startMandelbrotHeight)) {
+                    frame = new FrameBuffer(startMandelbrotWidth, startMandelbrotHeight);
+                }
+                Palette.classic(field.getParams().MAX_ITER).colorize(field, frame, scheduler).join();
+                image = frame.getImage();
+                validImage = true;
+            }
 
             while (!validImage) {
                 System.out.println("Iteration i = " + j); // Вывод значения i в консоль
                 attempt++;
+                KeyAttemptEvent event = new KeyAttemptEvent();
+                event.begin();
+                metrics.recordAttempt();
                 randomPositionOnPlenty();
-                image = new BufferedImage(startMandelbrotWidth, startMandelbrotHeight, BufferedImage.TYPE_INT_RGB);
-                ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-                for (int x = 0; x < startMandelbrotWidth; x++) {
-                    executor.submit(new MandelbrotThread(x, startMandelbrotWidth, startMandelbrotHeight, ZOOM, MAX_ITER, offsetX,
-                            offsetY, image, zX_vals[j], zY_vals[j], cX_vals[j], cY_vals[j]));
+                MandelbrotParams params = new MandelbrotParams(startMandelbrotWidth, startMandelbrotHeight, ZOOM, MAX_ITER,
+                        offsetX, offsetY);
+                BigDecimal[] deepOffsets = null;
+                if (renderMode == RenderMode.PERTURBATION) {
+                    if (deepZoomRenderer == null) {
+                        deepZoomRenderer = new DeepZoomRenderer(scheduler);
+                    }
+                    // На глубоких масштабах у границы множества нужно больше итераций
+                    MAX_ITER += 200 * (int) Math.log10(deepZoom / ZOOM);
+                    params = new MandelbrotParams(startMandelbrotWidth, startMandelbrotHeight, ZOOM, MAX_ITER, offsetX, offsetY);
+                    deepOffsets = deepZoomRenderer.descend(params, deepZoom);
+                    if (deepOffsets == null) {
+                        recordSample(params, false);
+                        metrics.recordDescentRejection();
+                        event.finish(params, "DESCENT", false);
+                        System.out.println("Попытка №" + attempt + ". Спуск к границе множества не удался, повторная рандомизация...");
+                        continue;
+                    }
+                    ZOOM = deepZoom;
+                    offsetX = deepOffsets[0].doubleValue();
+                    offsetY = deepOffsets[1].doubleValue();
+                    params = new MandelbrotParams(startMandelbrotWidth, startMandelbrotHeight, ZOOM, MAX_ITER, offsetX, offsetY);
                 }
-
-                executor.shutdown();
+                DiversityProbe.Estimate estimate = null;
+                if (useProbe && deepOffsets == null) {
+                    estimate = probe.probe(params, kernel);
+                    if (!estimate.likelyValid && !probe.shouldAudit()) {
+                        recordSample(params, false);
+                        metrics.recordProbeRejection();
+                        event.finish(params, "PROBE", false);
+                        System.out.println("Попытка №" + attempt + ". Пробный проход отклонил вид, повторная рандомизация...");
+                        continue;
+                    }
+                }
+                field = field == null ? new IterationField(params) : field.reuse(params);
+                Palette palette = Palette.classic(MAX_ITER);
                 try {
-                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-                } catch (InterruptedException e) {
+                    if (deepOffsets != null) {
+                        deepZoomRenderer.render(field, deepOffsets[0], deepOffsets[1]).get();
+                    } else if (renderMode == RenderMode.MARIANI_SILVER) {
+                        MarianiSilverRenderer renderer = new MarianiSilverRenderer(scheduler, kernel);
+                        renderer.setVerify(verifySubdivision);
+                        renderer.render(field).get();
+                    } else {
+                        scheduler.render(field, kernel, true).get();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
                     e.printStackTrace();
                 }
 
-                validImage = checkImageDiversity(image);
+                DiversityCheck.Rejection rejection = DiversityCheck.reason(field, palette);
+                validImage = rejection == null;
+                keyOffsets = deepOffsets;
+                metrics.recordVerdict(field, rejection);
+                event.finish(params, validImage ? "ACCEPTED" : rejection.name(), field.isAborted());
+                if (validImage) {
+                    // Раскрашивается только принятый кадр
+                    if (frame == null || !frame.fits(startMandelbrotWidth, startMandelbrotHeight)) {
+                        frame = new FrameBuffer(startMandelbrotWidth, startMandelbrotHeight);
+                    }
+                    palette.colorize(field, frame, scheduler).join();
+                    image = frame.getImage();
+                }
+                if (estimate != null) {
+                    probe.record(estimate, validImage);
+                }
+                recordSample(params, validImage);
+                long totalPixels = (long) startMandelbrotWidth * startMandelbrotHeight;
+                renderedPixels += field.getRenderedPixels();
+                requestedPixels += totalPixels;
                 if (!validImage) {
                     System.out.println("Попытка №" + attempt + ". Изображение не удовлетворяет условиям, повторная рандомизация...");
+                    if (field.isAborted()) {
+                        System.out.printf("Рендеринг остановлен досрочно: посчитано %d из %d пикселей, сэкономлено %.1f%%%n",
+                                field.getRenderedPixels(), totalPixels, 100.0 * (totalPixels - field.getRenderedPixels()) / totalPixels);
+                    }
                 }
             }
 
             repaint();
 
-            String fileName = String.format("sv/i=%d_ZOOM=%.2f_MAX_ITER=%d_offsetX=%.2f_offsetY=%.2f.png", j, ZOOM, MAX_ITER, offsetX, offsetY);
-            File outputFile = new File(fileName);
+            if (acceptanceMap != null) {
+                try {
+                    acceptanceMap.save(acceptanceMapFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            String fileName = keyOffsets != null ? field.getParams().fileName(j, "png", keyOffsets[0], keyOffsets[1])
+                    : field.getParams().fileName(j);
             try {
-                ImageIO.write(image, "png", outputFile);
+                if (manifest != null) {
+                    ImageIO.write(image, "png", manifest.tempFile(fileName).toFile());
+                    manifest.commit(j, field.getParams(), fileName);
+                } else {
+                    ImageIO.write(image, "png", new File("sv/" + fileName));
+                }
+                metrics.recordKeyCompleted();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
+
+        if (useProbe) {
+            probe.printReport();
+        }
+        if (acceptanceMap != null) {
+            acceptanceMap.printReport();
+        }
+        if (maxIterEstimator != null) {
+            maxIterEstimator.printReport();
+        }
+        System.out.printf("Досрочная остановка сэкономила %.1f%% пикселей полных рендерингов%n",
+                requestedPixels == 0 ? 0 : 100.0 * (requestedPixels - renderedPixels) / requestedPixels);
+    }
+
+    private void recordSample(MandelbrotParams params, boolean valid) {
+        if (acceptanceMap != null && lastSample != null) {
+            acceptanceMap.record(lastSample, params, valid);
+        }
     }
 
     /**
-     * Проверяет разнообразие пикселей в изображении.
+     * Задает журнал прогона: готовые ключи пропускаются, новые записываются атомарно и заносятся в журнал.
      *
-     * @param image Изображение для проверки.
-     * @return true, если изображение удовлетворяет условиям разнообразия, иначе false.
+     * @param manifest Журнал прогона или null.
      */
-    private boolean checkImageDiversity(BufferedImage image) {
-        int totalPixels = image.getWidth() * image.getHeight();
-        Map<Integer, Integer> colorCount = new HashMap<>();
+    public void setManifest(RunManifest manifest) {
+        this.manifest = manifest;
+    }
 
-        if (isImageBlackPercentageAboveThreshold(image, 0.075)) {
-            return false;
+    /**
+     * Включает выбор видов по карте приемлемости. Карта сохраняется в файл после каждого ключа.
+     * С картой последовательность видов зависит от истории, поэтому с зерном ключей карта не применяется.
+     *
+     * @param acceptanceMap Карта приемлемости или null для равномерного выбора.
+     * @param file Файл для сохранения карты.
+     */
+    public void setAcceptanceMap(AcceptanceMap acceptanceMap, Path file) {
+        if (acceptanceMap != null) {
+            requireRandomViews("карта приемлемости");
         }
+        this.acceptanceMap = acceptanceMap;
+        this.acceptanceMapFile = file;
+    }
 
-        int[] pixels = new int[totalPixels];
-        image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
-
-        for (int pixel : pixels) {
-            colorCount.put(pixel, colorCount.getOrDefault(pixel, 0) + 1);
+    /**
+     * Включает подбор MAX_ITER по детализации вида. Случайное значение по-прежнему выбирается,
+     * поэтому последовательность смещений и масштабов не меняется. С зерном ключей не применяется.
+     *
+     * @param maxIterEstimator Оценка MAX_ITER или null, чтобы оставить случайное значение.
+     */
+    public void setMaxIterEstimator(MaxIterEstimator maxIterEstimator) {
+        if (maxIterEstimator != null) {
+            requireRandomViews("оценка MAX_ITER");
         }
+        this.maxIterEstimator = maxIterEstimator;
+    }
 
-        int uniqueColors = colorCount.size();
-        int maxCount = colorCount.values().stream().max(Integer::compare).orElse(0);
-        double percentage = (double) maxCount / totalPixels;
+    /**
+     * Включает или отключает пробный проход перед полным рендерингом.
+     *
+     * @param useProbe true, чтобы выполнять пробный проход.
+     */
+    public void setUseProbe(boolean useProbe) {
+        this.useProbe = useProbe;
+    }
 
-        return (uniqueColors > 250 && percentage < 0.2);
+    /**
+     * Выбирает ядро подсчета времени выхода.
+     *
+     * @param kernel Ядро подсчета времени выхода.
+     */
+    public void setKernel(EscapeKernel kernel) {
+        this.kernel = kernel;
     }
 
-    public static boolean isImageBlackPercentageAboveThreshold(BufferedImage image, double threshold) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int totalPixels = width * height;
-        int blackPixelCount = 0;
+    /**
+     * Выбирает способ рендеринга кадра.
+     *
+     * @param renderMode Способ рендеринга.
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        if (renderMode != RenderMode.TILES) {
+            requireRandomViews("способ рендеринга " + renderMode);
+        }
+        this.renderMode = renderMode;
+    }
 
-        int[] pixels = new int[totalPixels];
-        image.getRGB(0, 0, width, height, pixels, 0, width);
+    /**
+     * Задает целевой масштаб для режима теории возмущений.
+     *
+     * @param deepZoom Целевой уровень масштабирования (например, 1e30).
+     */
+    public void setDeepZoom(double deepZoom) {
+        requireRandomViews("глубокий масштаб");
+        this.deepZoom = deepZoom;
+    }
 
-        for (int pixel : pixels) {
-            if (isBlackPixel(pixel)) {
-                blackPixelCount++;
-            }
+    /**
+     * Проверяет, что ключи выбираются случайно: с зерном вид выводится только процедурой KeyCache.derive.
+     *
+     * @param option Название параметра для сообщения об ошибке.
+     * @throws IllegalArgumentException Если задано зерно ключей.
+     */
+    private void requireRandomViews(String option) {
+        if (keySeed != null) {
+            throw new IllegalArgumentException("С зерном ключей не применяется: " + option);
         }
+    }
 
-        // Вычисление процента черных пикселей
-        double percentageBlack = (double) blackPixelCount / (width * height);
+    /**
+     * Включает или отключает сравнение результата деления прямоугольников с полным перебором.
+     *
+     * @param verifySubdivision true, чтобы сравнивать каждый кадр с полным перебором.
+     */
+    public void setVerifySubdivision(boolean verifySubdivision) {
+        this.verifySubdivision = verifySubdivision;
+    }
 
-        // Сравнение с порогом
-        return percentageBlack > threshold;
+    /**
+     * Возвращает зонд разнообразия для настройки порогов.
+     *
+     * @return Зонд разнообразия.
+     */
+    public DiversityProbe getProbe() {
+        return probe;
+    }
+
+    public static boolean isImageBlackPercentageAboveThreshold(BufferedImage image, double threshold) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getRGB(0, 0, width, height, pixels, 0, width);
+        return DiversityCheck.isBlackShareAboveThreshold(pixels, threshold);
     }
 
     public static boolean isBlackPixel(int pixel) {
-        // Проверка, является ли пиксель черным
-        return (pixel & 0xFFFFFF) == 0;
+        return DiversityCheck.isBlackPixel(pixel);
     }
 
     /**
@@ -202,8 +435,26 @@ public class Mandelbrot extends JPanel {
      * @param args Аргументы командной строки.
      */
     public static void main(String[] args) {
+        RenderMetrics.register();
         JFrame frame = new JFrame("Mandelbrot Set");
         Mandelbrot mandelbrot = new Mandelbrot();
+        EscapeKernel kernel = KernelSelector.select(new InteriorCullingKernel());
+        mandelbrot.setKernel(kernel);
+        mandelbrot.setMaxIterEstimator(new MaxIterEstimator(RenderScheduler.getShared(), kernel,
+                MaxIterEstimator.DEFAULT_STRIDE));
+        Path mapFile = Paths.get(AcceptanceMap.DEFAULT_FILE);
+        try {
+            mandelbrot.setAcceptanceMap(AcceptanceMap.load(mapFile), mapFile);
+        } catch (IOException e) {
+            System.err.println("Не удалось загрузить карту приемлемости: " + e.getMessage());
+        }
+        try {
+            // С аргументом --resume прогон продолжается с недостающих ключей
+            boolean resume = args.length > 0 && args[0].equals("--resume");
+            mandelbrot.setManifest(RunManifest.open(Paths.get("sv"), resume));
+        } catch (IOException e) {
+            System.err.println("Не удалось открыть журнал прогона: " + e.getMessage());
+        }
         frame.add(mandelbrot);
         frame.setSize(1024, 720);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -1,9 +1,11 @@
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import javax.imageio.ImageIO;
 
 public class MandelbrotAnalyzer {
 
@@ -45,7 +47,7 @@ public class MandelbrotAnalyzer {
         BufferedImage defaultImage = loadImage("default.png");
 
         File dir = new File("sv");
-        File[] files = dir.listFiles((dir1, name) -> name.endsWith(".png"));
+        File[] files = listKeyFiles(dir);
 
         if (files != null) {
             int currentIteration = 0;
@@ -158,7 +160,7 @@ public class MandelbrotAnalyzer {
 
     public static void compareImagesPairwise() {
         File dir = new File("sv");
-        File[] files = dir.listFiles((dir1, name) -> name.endsWith(".png"));
+        File[] files = listKeyFiles(dir);
 
         if (files != null && files.length > 0) {
             int totalComparisons = 0;
@@ -212,9 +214,33 @@ public class MandelbrotAnalyzer {
         }
     }
 
+    /**
+     * Возвращает файлы ключей папки, по одному на имя без расширения. KeyImage import записывает .mbk рядом
+     * с PNG, не удаляя его, поэтому из пары файлов одного ключа берется .mbk, иначе ключ анализировался бы дважды
+     * и сравнивался бы с собственной копией.
+     *
+     * @param dir Папка ключей.
+     * @return Файлы ключей в порядке имен или null, если папку не удалось прочитать.
+     */
+    private static File[] listKeyFiles(File dir) {
+        File[] files = dir.listFiles((dir1, name) -> (name.endsWith(".png") || name.endsWith("." + KeyImage.EXTENSION)));
+        if (files == null) {
+            return null;
+        }
+        Map<String, File> keys = new TreeMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            String baseName = name.substring(0, name.lastIndexOf('.'));
+            if (name.endsWith("." + KeyImage.EXTENSION) || !keys.containsKey(baseName)) {
+                keys.put(baseName, file);
+            }
+        }
+        return keys.values().toArray(new File[0]);
+    }
+
     private static BufferedImage loadImage(String fileName) {
         try {
-            return ImageIO.read(new File(fileName));
+            return KeyImage.readImage(Paths.get(fileName));
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -232,7 +258,7 @@ public class MandelbrotAnalyzer {
         image.getRGB(0, 0, width, height, imagePixels, 0, width);
 
         // 1. Сравнение по SSIM
-        double ssim = calculateSSIM(defaultPixels, imagePixels);
+        double ssim = calculateSSIM(defaultImage, image);
         double zX_ssim = DEFAULT_ZX;
         double zY_ssim = DEFAULT_ZY;
         double cX_ssim = DEFAULT_CX;
@@ -342,49 +368,10 @@ public class MandelbrotAnalyzer {
         return calculateMatchingPixelsPercentage(pixels1, pixels2);
     }
 
+    // Оконный SSIM (окно 8x8) по яркости, а не по упакованным значениям RGB
     private static double calculateSSIM(BufferedImage image1, BufferedImage image2) {
-        int width = image1.getWidth();
-        int height = image1.getHeight();
-
-        int[] pixels1 = new int[width * height];
-        int[] pixels2 = new int[width * height];
-
-        image1.getRGB(0, 0, width, height, pixels1, 0, width);
-        image2.getRGB(0, 0, width, height, pixels2, 0, width);
-
-        return calculateSSIM(pixels1, pixels2);
-    }
-
-    private static double calculateSSIM(int[] x, int[] y) {
-        int n = x.length;
-
-        double meanX = 0, meanY = 0;
-        for (int i = 0; i < n; i++) {
-            meanX += x[i];
-            meanY += y[i];
-        }
-        meanX /= n;
-        meanY /= n;
-
-        double varX = 0, varY = 0, covXY = 0;
-        for (int i = 0; i < n; i++) {
-            double diffX = x[i] - meanX;
-            double diffY = y[i] - meanY;
-            varX += diffX * diffX;
-            varY += diffY * diffY;
-            covXY += diffX * diffY;
-        }
-        varX /= n;
-        varY /= n;
-        covXY /= n;
-
-        double C1 = 0.01 * 255 * 0.01 * 255;
-        double C2 = 0.03 * 255 * 0.03 * 255;
-
-        double numerator = (2 * meanX * meanY + C1) * (2 * covXY + C2);
-        double denominator = (meanX * meanX + meanY * meanY + C1) * (varX + varY + C2);
-
-        return numerator / denominator;
+        return new WindowedSSIM(RenderScheduler.getShared(), WindowedSSIM.DEFAULT_WINDOW, WindowedSSIM.Channel.LUMA)
+                .compute(image1, image2).mean();
     }
 
     // Функция для вычисления коэффициента корреляции Пирсона
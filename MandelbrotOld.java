@@ -1,16 +1,35 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
 public class MandelbrotOld extends JPanel {
     private final int MAX_ITER = 3000;
-    private double ZOOM = 300;
+    private static final double BASE_ZOOM = 300; // Начальный уровень масштабирования
+    private static final long TILE_CACHE_BYTES = 64L << 20; // Объем кэша плиток
+    private double ZOOM = BASE_ZOOM;
+    private int zoomLevel = 0; // Уровень масштаба: приближение повышает его на 1, отдаление понижает
     private double offsetX = 0; // Смещение по оси X
     private double offsetY = 0; // Смещение по оси Y
+    private final Palette palette = createPalette(MAX_ITER); // Цвета i | (i << 10), черный для точек множества
+    private final ProgressiveRenderer renderer; // Фоновый рендеринг по проходам
+    private volatile BufferedImage image; // Последний завершенный проход
 
     public MandelbrotOld() {
+        renderer = new ProgressiveRenderer(RenderScheduler.getShared(), EscapeKernel.CLASSIC, frame -> {
+            image = frame;
+            repaint();
+        });
+        renderer.setTileCache(new TileCache(TILE_CACHE_BYTES));
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                startRender();
+            }
+        });
         addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
@@ -19,41 +38,66 @@ public class MandelbrotOld extends JPanel {
                     double y = e.getY();
                     offsetX += (x - getWidth() / 2) / ZOOM;
                     offsetY += (y - getHeight() / 2) / ZOOM;
-                    ZOOM *= 1.4;
-                    repaint();
+                    zoomLevel++;
+                    ZOOM = zoomFor(zoomLevel);
+                    startRender();
                 } else if (SwingUtilities.isRightMouseButton(e)) { //отдаление
                     double x = e.getX();
                     double y = e.getY();
                     offsetX += (x - getWidth() / 2) / ZOOM;
                     offsetY += (y - getHeight() / 2) / ZOOM;
-                    ZOOM *= 0.8;
-                    repaint();
+                    zoomLevel--;
+                    ZOOM = zoomFor(zoomLevel);
+                    startRender();
                 }
             }
         });
     }
 
+    /**
+     * Отрисовывает последний завершенный проход. Рендеринг здесь не выполняется: перерисовка окна
+     * (изменение размера, перекрытие) только копирует готовый буфер.
+     *
+     * @param g Графический контекст для рисования.
+     */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = this.image;
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        }
+    }
 
-        for (int x = 0; x < getWidth(); x++) {
-            for (int y = 0; y < getHeight(); y++) {
-                double zx = 0, zy = 0;
-                double cX = (x - getWidth() / 2) / ZOOM + offsetX;
-                double cY = (y - getHeight() / 2) / ZOOM + offsetY;
-                int i = MAX_ITER;
-                while (zx * zx + zy * zy < 4 && i > 0) {
-                    double tmp = zx * zx - zy * zy + cX;
-                    zy = 2.0 * zx * zy + cY;
-                    zx = tmp;
-                    i--;
-                }
-                int color = i | (i << 10);
-                image.setRGB(x, y, i > 0 ? color : 0);
-            }
+    /**
+     * Отменяет текущий рендеринг и запускает фоновый рендеринг текущего вида.
+     */
+    private void startRender() {
+        if (getWidth() > 0 && getHeight() > 0) {
+            renderer.render(new ProgressiveRenderer.View(getWidth(), getHeight(), ZOOM, MAX_ITER, offsetX, offsetY),
+                    palette);
         }
-        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * Вычисляет уровень масштабирования по уровню масштаба: каждое приближение умножает ZOOM на 1.4, а отдаление
+     * делит на 1.4, то есть точно отменяет приближение. ZOOM зависит только от уровня, поэтому после приближения
+     * и отдаления он совпадает до бита, и плитки этого уровня берутся из кэша.
+     */
+    private static double zoomFor(int zoomLevel) {
+        return BASE_ZOOM * Math.pow(1.4, zoomLevel);
+    }
+
+    private static Palette createPalette(int MAX_ITER) {
+        int[] table = new int[MAX_ITER + 1];
+        for (int i = 1; i <= MAX_ITER; i++) {
+            table[i] = (i | (i << 10)) & 0xFFFFFF; // Старшие биты отбрасываются так же, как при setRGB
+        }
+        return new Palette(table);
+    }
+
+    public void setKernel(EscapeKernel kernel) {
+        renderer.setKernel(kernel);
+        startRender();
     }
 }
\ No newline at end of file
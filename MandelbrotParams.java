@@ -0,0 +1,93 @@
+import java.math.BigDecimal;
+
+/**
+ * Класс MandelbrotParams хранит параметры одного кадра множества Мандельброта:
+ * размеры изображения, уровень масштабирования, максимальное количество итераций и смещения.
+ * Объект неизменяемый, поэтому его можно безопасно передавать между потоками рендеринга.
+ */
+public final class MandelbrotParams {
+    public final int width; // Ширина изображения
+    public final int height; // Высота изображения
+    public final double ZOOM; // Уровень масштабирования
+    public final int MAX_ITER; // Максимальное количество итераций
+    public final double offsetX; // Смещение по оси X
+    public final double offsetY; // Смещение по оси Y
+
+    /**
+     * Конструктор класса MandelbrotParams.
+     *
+     * @param width Ширина изображения.
+     * @param height Высота изображения.
+     * @param ZOOM Уровень масштабирования.
+     * @param MAX_ITER Максимальное количество итераций.
+     * @param offsetX Смещение по оси X.
+     * @param offsetY Смещение по оси Y.
+     */
+    public MandelbrotParams(int width, int height, double ZOOM, int MAX_ITER, double offsetX, double offsetY) {
+        this.width = width;
+        this.height = height;
+        this.ZOOM = ZOOM;
+        this.MAX_ITER = MAX_ITER;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    /**
+     * Переводит координату пикселя по оси X в действительную часть точки c.
+     *
+     * @param x Координата X пикселя.
+     * @return Действительная часть c.
+     */
+    public double toReal(int x) {
+        return (x - width / 1.75) / ZOOM + offsetX;
+    }
+
+    /**
+     * Переводит координату пикселя по оси Y в мнимую часть точки c.
+     *
+     * @param y Координата Y пикселя.
+     * @return Мнимая часть c.
+     */
+    public double toImaginary(int y) {
+        return (y - height / 1.75) / ZOOM + offsetY;
+    }
+
+    /**
+     * Формирует имя PNG-файла ключевого изображения с параметрами кадра.
+     *
+     * @param index Номер ключа.
+     * @return Имя файла вида i=..._ZOOM=..._MAX_ITER=..._offsetX=..._offsetY=....png.
+     */
+    public String fileName(int index) {
+        return fileName(index, "png");
+    }
+
+    /**
+     * Формирует имя файла ключевого изображения с параметрами кадра и указанным расширением.
+     *
+     * @param index Номер ключа.
+     * @param extension Расширение файла без точки.
+     * @return Имя файла вида i=..._ZOOM=..._MAX_ITER=..._offsetX=..._offsetY=....extension.
+     */
+    public String fileName(int index, String extension) {
+        return String.format("i=%d_ZOOM=%.2f_MAX_ITER=%d_offsetX=%.2f_offsetY=%.2f.%s", index, ZOOM, MAX_ITER, offsetX,
+                offsetY, extension);
+    }
+
+    /**
+     * Формирует имя файла ключа глубокого масштаба. Смещения с двумя знаками после запятой не задают вид при ZOOM
+     * порядка 1e30, поэтому после них в имя добавляются точные смещения, по которым ключ можно воспроизвести
+     * (см. KeyImage.parseExactOffsets).
+     *
+     * @param index Номер ключа.
+     * @param extension Расширение файла без точки.
+     * @param exactOffsetX Точное смещение по оси X.
+     * @param exactOffsetY Точное смещение по оси Y.
+     * @return Имя файла вида i=..._offsetY=..._exactX=..._exactY=....extension.
+     */
+    public String fileName(int index, String extension, BigDecimal exactOffsetX, BigDecimal exactOffsetY) {
+        String name = fileName(index, extension);
+        return name.substring(0, name.length() - extension.length() - 1) + "_exactX=" + exactOffsetX.toPlainString()
+                + "_exactY=" + exactOffsetY.toPlainString() + "." + extension;
+    }
+}
\ No newline at end of file
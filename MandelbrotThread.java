@@ -1,77 +1,181 @@
-import java.awt.image.BufferedImage;
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * @author @dankotyt Danil Kotlyarov
  *
- * Класс MandelbrotThread реализует интерфейс Runnable и используется для генерации части изображения множества Мандельброта
- * в отдельном потоке.
+ * Класс MandelbrotThread реализует интерфейс Runnable и используется для генерации прямоугольного участка (плитки)
+ * поля итераций множества Мандельброта в отдельном потоке.
  */
 public class MandelbrotThread implements Runnable {
 
-    private int x; // Координата X для генерации
+    private int startX; // Левая граница плитки (включительно)
+    private int startY; // Верхняя граница плитки (включительно)
+    private int endX; // Правая граница плитки (не включительно)
+    private int endY; // Нижняя граница плитки (не включительно)
     private int getWidth; // Ширина изображения
     private int getHeight; // Высота изображения
     private double ZOOM; // Уровень масштабирования
     private int MAX_ITER; // Максимальное количество итераций
     private double offsetX; // Смещение по оси X
     private double offsetY; // Смещение по оси Y
-    private double zX;
-    private double zY;
-    private BufferedImage image; // Изображение для записи результатов
+    private short[] counts; // Поле итераций для записи результатов
+    private EscapeKernel kernel; // Ядро подсчета времени выхода
+    private FrameHistogram histogram; // Гистограмма кадра или null
 
     /**
-     * Конструктор класса MandelbrotThread.
+     * Конструктор класса MandelbrotThread для прямоугольной плитки изображения.
      *
-     * @param x Координата X для генерации.
-     * @param getWidth Ширина изображения.
-     * @param getHeight Высота изображения.
-     * @param ZOOM Уровень масштабирования.
-     * @param MAX_ITER Максимальное количество итераций.
-     * @param offsetX Смещение по оси X.
-     * @param offsetY Смещение по оси Y.
-     * @param image Изображение для записи результатов.
+     * @param startX Левая граница плитки (включительно).
+     * @param startY Верхняя граница плитки (включительно).
+     * @param endX Правая граница плитки (не включительно).
+     * @param endY Нижняя граница плитки (не включительно).
+     * @param field Поле итераций для записи результатов.
+     */
+    public MandelbrotThread(int startX, int startY, int endX, int endY, IterationField field) {
+        this(startX, startY, endX, endY, field, EscapeKernel.CLASSIC);
+    }
+
+    /**
+     * Конструктор класса MandelbrotThread для прямоугольной плитки изображения с выбранным ядром.
+     *
+     * @param startX Левая граница плитки (включительно).
+     * @param startY Верхняя граница плитки (включительно).
+     * @param endX Правая граница плитки (не включительно).
+     * @param endY Нижняя граница плитки (не включительно).
+     * @param field Поле итераций для записи результатов.
+     * @param kernel Ядро подсчета времени выхода.
+     */
+    public MandelbrotThread(int startX, int startY, int endX, int endY, IterationField field, EscapeKernel kernel) {
+        MandelbrotParams params = field.getParams();
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+        this.getWidth = params.width;
+        this.getHeight = params.height;
+        this.ZOOM = params.ZOOM;
+        this.MAX_ITER = params.MAX_ITER;
+        this.offsetX = params.offsetX;
+        this.offsetY = params.offsetY;
+        this.counts = field.getCounts();
+        this.kernel = kernel;
+    }
+
+    /**
+     * Конструктор класса MandelbrotThread, который вместе с плиткой считает ее гистограмму.
+     *
+     * @param startX Левая граница плитки (включительно).
+     * @param startY Верхняя граница плитки (включительно).
+     * @param endX Правая граница плитки (не включительно).
+     * @param endY Нижняя граница плитки (не включительно).
+     * @param field Поле итераций для записи результатов.
+     * @param kernel Ядро подсчета времени выхода.
+     * @param histogram Гистограмма кадра, в которую вливается гистограмма плитки.
      */
-    public MandelbrotThread(int x, int getWidth, int getHeight, double ZOOM, int MAX_ITER, double offsetX,
-                            double offsetY, BufferedImage image, double zX, double zY, double cX, double cY) {
-        this.x = x;
-        this.getWidth = getWidth;
-        this.getHeight = getHeight;
-        this.ZOOM = ZOOM;
-        this.MAX_ITER = MAX_ITER;
-        this.offsetX = offsetX;
-        this.offsetY = offsetY;
-        this.image = image;
-        this.zX = zX;
-        this.zY = zY;
-        //this.offsetX = cX;
-        //this.offsetY = cY;
+    public MandelbrotThread(int startX, int startY, int endX, int endY, IterationField field, EscapeKernel kernel,
+                            FrameHistogram histogram) {
+        this(startX, startY, endX, endY, field, kernel);
+        this.histogram = histogram;
     }
 
     /**
-     * Метод run выполняет генерацию части изображения множества Мандельброта.
-     * Для каждой точки (x, y) на изображении вычисляется количество итераций,
+     * Метод run выполняет генерацию плитки поля итераций множества Мандельброта.
+     * Для каждой точки (x, y) плитки вычисляется количество итераций,
      * необходимых для определения, принадлежит ли точка множеству Мандельброта.
-     * Результат записывается в соответствующую точку изображения.
+     * Оставшееся количество итераций записывается в соответствующую точку поля
+     * и, если задана гистограмма кадра, учитывается в гистограмме плитки.
+     * Если гистограмма кадра сообщает о гарантированном отказе, оставшиеся строки плитки не считаются.
+     * Время, пиксели и итерации плитки учитываются в RenderMetrics и событии JFR TileRenderEvent.
      */
     @Override
     public void run() {
-        for (int y = 0; y < getHeight; y++) {
-            double zx = 0;
-            double zy = 0;
+        TileRenderEvent event = new TileRenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long iterations = 0;
+        double[] cXs = new double[endX - startX]; // Действительные части точек, общие для всех строк плитки
+        int[] row = new int[endX - startX];
+        int[] local = histogram != null ? histogram.local() : null;
+        int min = MAX_ITER;
+        int max = 0;
+        for (int x = startX; x < endX; x++) {
+            cXs[x - startX] = (x - getWidth / 1.75) / ZOOM + offsetX;
+        }
+        int renderedRows = 0;
+        for (int y = startY; y < endY; y++) {
+            if (histogram != null && histogram.isRejected()) {
+                break; // Отказ уже гарантирован, остаток плитки не нужен
+            }
+            double cY = (y - getHeight / 1.75) / ZOOM + offsetY;
             //double zx = this.zX;
             //double zy = this.zY;
-            double cX = (x - getWidth / 1.75) / ZOOM + offsetX;
-            double cY = (y - getHeight / 1.75) / ZOOM + offsetY;
-            int i = MAX_ITER;
-            while (zx * zx + zy * zy < 4 && i > 0) {
-                double tmp = zx * zx - zy * zy + cX;
-                zy = 2.0 * zx * zy + cY;
-                zx = tmp;
-                i--;
+            kernel.escapeRow(cXs, cY, MAX_ITER, row);
+            int rowStart = y * getWidth;
+            for (int x = startX; x < endX; x++) {
+                counts[rowStart + x] = (short) row[x - startX];
+                iterations += MAX_ITER - row[x - startX];
+            }
+            if (local != null) {
+                for (int i : row) {
+                    local[i]++;
+                    min = Math.min(min, i);
+                    max = Math.max(max, i);
+                }
             }
-            int color = i | (i << 10) | (i << 14);
-            image.setRGB(x, y, i > 0 ? color : 0);
+            renderedRows++;
         }
+        long pixels = (long) renderedRows * (endX - startX);
+        if (local != null) {
+            histogram.addRendered(pixels);
+            if (renderedRows == endY - startY) {
+                histogram.merge(local, min, max);
+            } else if (min <= max) {
+                Arrays.fill(local, min, max + 1, 0);
+            }
+        }
+        RenderMetrics.getShared().recordTile(System.nanoTime() - start, pixels, iterations);
+        if (event.shouldCommit()) {
+            event.startX = startX;
+            event.startY = startY;
+            event.width = endX - startX;
+            event.height = endY - startY;
+            event.maxIter = MAX_ITER;
+            event.pixels = pixels;
+            event.iterations = iterations;
+            event.aborted = renderedRows < endY - startY;
+            event.commit();
+        }
+    }
+
+    /**
+     * Вычисляет, сколько итераций осталось неиспользованными к моменту выхода орбиты точки c за круг радиуса 2.
+     *
+     * @param cX Действительная часть c.
+     * @param cY Мнимая часть c.
+     * @param MAX_ITER Максимальное количество итераций.
+     * @return Оставшееся количество итераций; 0, если точка не покинула круг (принадлежит множеству).
+     */
+    public static int escape(double cX, double cY, int MAX_ITER) {
+        double zx = 0;
+        double zy = 0;
+        int i = MAX_ITER;
+        while (zx * zx + zy * zy < 4 && i > 0) {
+            double tmp = zx * zx - zy * zy + cX;
+            zy = 2.0 * zx * zy + cY;
+            zx = tmp;
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Переводит оставшееся количество итераций в цвет пикселя.
+     *
+     * @param i Оставшееся количество итераций.
+     * @return Цвет пикселя в формате 0xRRGGBB; черный для точек множества.
+     */
+    public static int toColor(int i) {
+        int color = (i | (i << 10) | (i << 14)) & 0xFFFFFF; // Старшие биты отбрасываются так же, как при setRGB
+        return i > 0 ? color : 0;
     }
 }
\ No newline at end of file
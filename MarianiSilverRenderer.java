@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Класс MarianiSilverRenderer рендерит кадр множества Мандельброта методом рекурсивного деления прямоугольников
+ * (алгоритм Мариани–Силвера). Множество Мандельброта связно, поэтому если на всей границе прямоугольника
+ * количество итераций одинаково, то и внутри оно такое же: внутренность заливается без вычислений.
+ * Прямоугольники с неоднородной границей делятся пополам, и половины обрабатываются параллельно
+ * на пуле планировщика рендеринга.
+ */
+public class MarianiSilverRenderer {
+    private static final int MIN_SIZE = 6; // Прямоугольники меньше этого размера считаются полным перебором
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого выполняется деление
+    private final EscapeKernel kernel; // Ядро подсчета времени выхода
+    private boolean verify = false; // Сравнивать ли результат с полным перебором
+
+    /**
+     * Конструктор класса MarianiSilverRenderer.
+     *
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     */
+    public MarianiSilverRenderer(RenderScheduler scheduler, EscapeKernel kernel) {
+        this.scheduler = scheduler;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Включает или отключает проверку результата полным перебором.
+     *
+     * @param verify true, чтобы после рендеринга сравнивать кадр с результатом полного перебора.
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Запускает рендеринг кадра делением прямоугольников и сразу возвращает управление.
+     *
+     * @param field Поле итераций для записи результатов; параметры кадра берутся из него.
+     * @return Future, завершающийся этим же полем после рендеринга.
+     */
+    public CompletableFuture<IterationField> render(IterationField field) {
+        return CompletableFuture.supplyAsync(() -> {
+            int[] counts = computeCounts(field.getParams());
+            short[] values = field.getCounts();
+            int[] histogram = new int[field.getParams().MAX_ITER + 1];
+            for (int i = 0; i < counts.length; i++) {
+                values[i] = (short) counts[i];
+                histogram[counts[i]]++;
+            }
+            field.setHistogram(histogram);
+            if (verify) {
+                verifyAgainstBruteForce(field);
+            }
+            return field;
+        }, scheduler.getPool());
+    }
+
+    /**
+     * Вычисляет количество оставшихся итераций для всех пикселей кадра делением прямоугольников.
+     *
+     * @param params Параметры кадра.
+     * @return Массив оставшихся итераций по строкам.
+     */
+    public int[] computeCounts(MandelbrotParams params) {
+        int[] counts = new int[params.width * params.height];
+        Arrays.fill(counts, -1);
+        Region root = new Region(params, counts, 0, 0, params.width, params.height);
+        root.computeBorder();
+        scheduler.getPool().invoke(root);
+        return counts;
+    }
+
+    /**
+     * Сравнивает кадр с результатом полного перебора и выводит количество расхождений.
+     *
+     * @param field Поле итераций, полученное делением прямоугольников.
+     * @return Количество пикселей, отличающихся от полного перебора.
+     */
+    public int verifyAgainstBruteForce(IterationField field) {
+        IterationField reference = new IterationField(field.getParams());
+        try {
+            scheduler.render(reference, kernel).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        short[] expected = reference.getCounts();
+        short[] actual = field.getCounts();
+        int mismatches = 0;
+        for (int i = 0; i < actual.length; i++) {
+            if (expected[i] != actual[i]) {
+                mismatches++;
+            }
+        }
+        System.out.println("Проверка деления прямоугольников: расхождений с полным перебором " + mismatches
+                + " из " + actual.length + " пикселей");
+        return mismatches;
+    }
+
+    /**
+     * Прямоугольник [startX, endX) x [startY, endY), граница которого уже вычислена.
+     */
+    private class Region extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final MandelbrotParams params;
+        private final int[] counts;
+        private final int startX;
+        private final int startY;
+        private final int endX;
+        private final int endY;
+
+        Region(MandelbrotParams params, int[] counts, int startX, int startY, int endX, int endY) {
+            this.params = params;
+            this.counts = counts;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+        }
+
+        @Override
+        protected void compute() {
+            int w = endX - startX;
+            int h = endY - startY;
+            if (w <= 2 || h <= 2) {
+                return; // Внутренних пикселей нет, граница уже вычислена
+            }
+
+            int value = counts[startY * params.width + startX];
+            if (isBorderUniform(value)) {
+                for (int y = startY + 1; y < endY - 1; y++) {
+                    Arrays.fill(counts, y * params.width + startX + 1, y * params.width + endX - 1, value);
+                }
+                return;
+            }
+
+            if (w < MIN_SIZE || h < MIN_SIZE) {
+                for (int y = startY + 1; y < endY - 1; y++) {
+                    for (int x = startX + 1; x < endX - 1; x++) {
+                        computePixel(x, y);
+                    }
+                }
+                return;
+            }
+
+            Region first;
+            Region second;
+            if (w >= h) {
+                int midX = startX + w / 2;
+                for (int y = startY + 1; y < endY - 1; y++) {
+                    computePixel(midX, y);
+                }
+                first = new Region(params, counts, startX, startY, midX + 1, endY);
+                second = new Region(params, counts, midX, startY, endX, endY);
+            } else {
+                int midY = startY + h / 2;
+                for (int x = startX + 1; x < endX - 1; x++) {
+                    computePixel(x, midY);
+                }
+                first = new Region(params, counts, startX, startY, endX, midY + 1);
+                second = new Region(params, counts, startX, midY, endX, endY);
+            }
+            invokeAll(first, second);
+        }
+
+        /**
+         * Вычисляет все пиксели границы прямоугольника.
+         */
+        void computeBorder() {
+            for (int x = startX; x < endX; x++) {
+                computePixel(x, startY);
+                computePixel(x, endY - 1);
+            }
+            for (int y = startY + 1; y < endY - 1; y++) {
+                computePixel(startX, y);
+                computePixel(endX - 1, y);
+            }
+        }
+
+        private boolean isBorderUniform(int value) {
+            int top = startY * params.width;
+            int bottom = (endY - 1) * params.width;
+            for (int x = startX; x < endX; x++) {
+                if (counts[top + x] != value || counts[bottom + x] != value) {
+                    return false;
+                }
+            }
+            for (int y = startY + 1; y < endY - 1; y++) {
+                int row = y * params.width;
+                if (counts[row + startX] != value || counts[row + endX - 1] != value) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void computePixel(int x, int y) {
+            int index = y * params.width + x;
+            if (counts[index] < 0) {
+                counts[index] = kernel.escape(params.toReal(x), params.toImaginary(y), params.MAX_ITER);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Класс MaxIterEstimator подбирает MAX_ITER под детализацию вида вместо случайного значения из 500..1220.
+ * На разреженной сетке пикселей (шаг stride) время выхода считается с высоким пределом CAP. При бюджете B
+ * точки, вышедшие раньше B, сохраняют свое время выхода, а вышедшие позже становятся черными, поэтому
+ * распределение времен выхода при бюджете B совпадает с распределением при CAP везде, кроме хвоста.
+ * Выбирается наименьший бюджет (кратный 8, не меньше MIN_ITER), при котором в хвост попадает не больше
+ * tailShare пробных точек и не больше levelShare различных времен выхода: от количества различных значений
+ * зависит количество цветов ключа, а редкие глубокие значения по числу точек почти ничего не весят.
+ * Выбранное значение записывается в параметры кадра и вместе с ними попадает в имя файла, заголовок .mbk
+ * и журнал прогона.
+ */
+public class MaxIterEstimator {
+    public static final int CAP = 4096; // Предел итераций пробного прохода
+    public static final int MIN_ITER = 500; // Наименьший бюджет итераций (меньший отнимает цвета у ключей на пороге)
+    public static final int DEFAULT_STRIDE = 16; // Шаг разреженной сетки по умолчанию
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считается проба
+    private final EscapeKernel kernel; // Ядро подсчета времени выхода
+    private final int stride; // Шаг разреженной сетки в пикселях
+    private double tailShare = 0.002; // Допустимая доля пробных точек, которые бюджет делает черными
+    private double levelShare = 0.02; // Допустимая доля различных времен выхода, которые бюджет теряет
+
+    private long estimates; // Количество оценок
+    private long sampledBudget; // Сумма MAX_ITER, выбранных случайно
+    private long chosenBudget; // Сумма MAX_ITER, выбранных оценкой
+
+    /**
+     * Конструктор класса MaxIterEstimator.
+     *
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     * @param stride Шаг разреженной сетки в пикселях.
+     */
+    public MaxIterEstimator(RenderScheduler scheduler, EscapeKernel kernel, int stride) {
+        this.scheduler = scheduler;
+        this.kernel = kernel;
+        this.stride = stride;
+    }
+
+    public void setTailShare(double tailShare) {
+        this.tailShare = tailShare;
+    }
+
+    public void setLevelShare(double levelShare) {
+        this.levelShare = levelShare;
+    }
+
+    /**
+     * Оценивает бюджет итераций для вида.
+     *
+     * @param params Параметры кадра (MAX_ITER не используется).
+     * @return Наименьший бюджет итераций, при котором распределение времен выхода устойчиво.
+     */
+    public int estimate(MandelbrotParams params) {
+        int columns = (params.width + stride - 1) / stride;
+        int rows = (params.height + stride - 1) / stride;
+        int[] samples = new int[columns * rows];
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int r = row;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                double[] cXs = new double[columns];
+                for (int column = 0; column < columns; column++) {
+                    cXs[column] = params.toReal(Math.min(column * stride + stride / 2, params.width - 1));
+                }
+                int[] remaining = new int[columns];
+                kernel.escapeRow(cXs, params.toImaginary(Math.min(r * stride + stride / 2, params.height - 1)), CAP,
+                        remaining);
+                for (int column = 0; column < columns; column++) {
+                    // Время выхода; точки, не вышедшие за CAP итераций, отмечаются нулем
+                    samples[r * columns + column] = remaining[column] > 0 ? CAP - remaining[column] : 0;
+                }
+            }, scheduler.getPool()));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+
+        int[] escaped = Arrays.stream(samples).filter(n -> n > 0).sorted().toArray();
+        int[] levels = Arrays.stream(escaped).distinct().toArray();
+        int allowed = (int) (tailShare * samples.length);
+        int allowedLevels = (int) (levelShare * levels.length);
+        int budget = MIN_ITER;
+        if (escaped.length > allowed) {
+            budget = Math.max(budget, escaped[escaped.length - 1 - allowed] + 1);
+        }
+        if (levels.length > allowedLevels) {
+            budget = Math.max(budget, levels[levels.length - 1 - allowedLevels] + 1);
+        }
+        budget = (budget + 7) / 8 * 8;
+        return Math.max(MIN_ITER, Math.min(CAP, budget));
+    }
+
+    /**
+     * Заменяет MAX_ITER вида оценкой.
+     *
+     * @param params Параметры кадра.
+     * @return Параметры кадра с оцененным MAX_ITER.
+     */
+    public MandelbrotParams apply(MandelbrotParams params) {
+        int MAX_ITER = estimate(params);
+        synchronized (this) {
+            estimates++;
+            sampledBudget += params.MAX_ITER;
+            chosenBudget += MAX_ITER;
+        }
+        return new MandelbrotParams(params.width, params.height, params.ZOOM, MAX_ITER, params.offsetX, params.offsetY);
+    }
+
+    /**
+     * Выводит в консоль средний бюджет итераций до и после оценки.
+     */
+    public synchronized void printReport() {
+        if (estimates == 0) {
+            return;
+        }
+        System.out.printf("Оценка MAX_ITER: %d видов, среднее случайное %d, среднее выбранное %d%n",
+                estimates, sampledBudget / estimates, chosenBudget / estimates);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,564 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Класс PairMatrix вычисляет UACI, NPCR и NFC для всех пар изображений набора (n(n-1)/2 пар).
+ * Каждое изображение один раз декодируется в плоскость int[] в формате getRGB. Пространство пар разбито на блоки
+ * blockSize x blockSize изображений, а пиксели — на участки по CHUNK_PIXELS: участок каждого изображения блока
+ * читается из памяти один раз и остается в кэше, пока по нему считаются все пары блока. Поэтому трафик памяти
+ * растет как n^2 / blockSize, а не как n^2. Пары блоков считаются параллельно на пуле планировщика.
+ *
+ * Результат — полные матрицы (верхний треугольник, float) и потоковые агрегаты по парам: среднее, минимум,
+ * максимум и стандартное отклонение. Если матрицы не нужны, хранятся только агрегаты. Для корпусов, которые не
+ * помещаются в память, агрегаты считаются проходами в пределах заданного бюджета памяти: по файлу плоскостей
+ * (PlaneFile), если в заданной папке хватает места, иначе с повторным декодированием файлов в каждом проходе.
+ */
+public class PairMatrix {
+    public static final int DEFAULT_BLOCK_SIZE = 8; // Изображений в блоке по умолчанию
+    public static final int CHUNK_PIXELS = 4096; // Пикселей в участке (16 КБ на изображение)
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считаются пары блоков
+    private final int blockSize; // Количество изображений в блоке
+    private final boolean keepMatrix; // Хранить ли значения всех пар
+
+    /**
+     * Агрегаты метрики по всем парам.
+     */
+    public record Stats(long pairs, double mean, double min, double max, double stdDev) {
+    }
+
+    /**
+     * Результат вычисления. Матрицы хранят верхний треугольник по строкам (см. index) и равны null,
+     * если значения пар не сохранялись.
+     */
+    public record Result(int n, float[] uaci, float[] npcr, float[] nfc, Stats uaciStats, Stats npcrStats,
+                         Stats nfcStats) {
+    }
+
+    /**
+     * Потоковый агрегат значений одной метрики.
+     */
+    private static class Accumulator {
+        long count; // Количество значений
+        double sum; // Сумма значений
+        double sumSq; // Сумма квадратов значений
+        double min = Double.POSITIVE_INFINITY; // Наименьшее значение
+        double max = Double.NEGATIVE_INFINITY; // Наибольшее значение
+
+        void add(double value) {
+            count++;
+            sum += value;
+            sumSq += value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        synchronized void merge(Accumulator other) {
+            count += other.count;
+            sum += other.sum;
+            sumSq += other.sumSq;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        Stats toStats() {
+            if (count == 0) {
+                return new Stats(0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            double mean = sum / count;
+            return new Stats(count, mean, min, max, Math.sqrt(Math.max(0, sumSq / count - mean * mean)));
+        }
+    }
+
+    /**
+     * Агрегаты и (если хранятся) матрицы всех трех метрик.
+     */
+    private static class Totals {
+        final Accumulator uaciTotal = new Accumulator(); // Агрегат UACI
+        final Accumulator npcrTotal = new Accumulator(); // Агрегат NPCR
+        final Accumulator nfcTotal = new Accumulator(); // Агрегат NFC
+        final float[] uaci; // Матрица UACI или null
+        final float[] npcr; // Матрица NPCR или null
+        final float[] nfc; // Матрица NFC или null
+
+        /**
+         * @param pairs Размер матриц или -1, если матрицы не хранятся.
+         */
+        Totals(int pairs) {
+            uaci = pairs >= 0 ? new float[pairs] : null;
+            npcr = pairs >= 0 ? new float[pairs] : null;
+            nfc = pairs >= 0 ? new float[pairs] : null;
+        }
+
+        void merge(Totals other) {
+            uaciTotal.merge(other.uaciTotal);
+            npcrTotal.merge(other.npcrTotal);
+            nfcTotal.merge(other.nfcTotal);
+        }
+
+        Result toResult(int n) {
+            return new Result(n, uaci, npcr, nfc, uaciTotal.toStats(), npcrTotal.toStats(), nfcTotal.toStats());
+        }
+    }
+
+    /**
+     * Плоскости изображений во временном файле (удаляется при закрытии): каждое изображение декодируется один раз,
+     * а проходы читают плоскости из отображения файла в память. Файл создается, только если на диске заданной папки
+     * хватает места на все плоскости и папка не находится в памяти (tmpfs), иначе бюджет памяти терял бы смысл.
+     */
+    public static class PlaneFile implements AutoCloseable {
+        private final FileChannel channel; // Файл плоскостей
+        private final ByteBuffer chunk = ByteBuffer.allocateDirect(4 * CHUNK_PIXELS).order(ByteOrder.LITTLE_ENDIAN);
+        private int length = -1; // Пикселей в изображении, известно после первого изображения
+        private int size; // Количество плоскостей
+        private MappedByteBuffer[] segments; // Отображение файла, создается при первом чтении
+
+        private PlaneFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Создает файл плоскостей для изображений files в папке dir. Размер плоскости берется из первого файла
+         * без декодирования.
+         *
+         * @param dir Папка временного файла.
+         * @param files Файлы изображений, плоскости которых будут записаны.
+         * @return Файл плоскостей или null, если файлов нет, папка находится в памяти или на диске не хватает места
+         *         (причина выводится в консоль).
+         * @throws IOException Если папку или файл не удалось создать или первый файл не читается.
+         */
+        public static PlaneFile open(Path dir, List<Path> files) throws IOException {
+            if (files.isEmpty()) {
+                return null;
+            }
+            Files.createDirectories(dir);
+            Dimension size = KeyImage.readSize(files.get(0));
+            long needed = 4L * size.width * size.height * files.size();
+            FileStore store = Files.getFileStore(dir);
+            if (store.type().equals("tmpfs") || store.type().equals("ramfs")) {
+                System.out.println("Папка " + dir + " находится в памяти (" + store.type() + "), файл плоскостей не создается");
+                return null;
+            }
+            if (store.getUsableSpace() < needed) {
+                System.out.println("В папке " + dir + " свободно " + store.getUsableSpace() + " байт, для файла плоскостей нужно "
+                        + needed);
+                return null;
+            }
+            Path file = Files.createTempFile(dir, "pairs", ".raw");
+            return new PlaneFile(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE));
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Дописывает пиксели изображения в формате getRGB.
+         *
+         * @param image Изображение того же размера, что и предыдущие.
+         * @throws IllegalArgumentException Если изображение другого размера или его плоскость больше 2 ГБ.
+         * @throws IllegalStateException Если файл не удалось дописать или он уже читается.
+         */
+        public void add(BufferedImage image) {
+            add(PairMetrics.raster(image));
+        }
+
+        void add(PairMetrics.Raster raster) {
+            int pixels = raster.width() * raster.height();
+            if (length < 0) {
+                if (4L * pixels > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Изображение больше 2 ГБ не отображается в память");
+                }
+                length = pixels;
+            } else if (pixels != length) {
+                throw new IllegalArgumentException("Изображения набора должны быть одного размера");
+            }
+            if (segments != null) {
+                throw new IllegalStateException("Файл плоскостей уже отображен в память");
+            }
+            try {
+                for (int from = 0; from < length; from += CHUNK_PIXELS) {
+                    int to = Math.min(from + CHUNK_PIXELS, length);
+                    chunk.clear();
+                    for (int k = from; k < to; k++) {
+                        chunk.putInt(raster.get(k));
+                    }
+                    chunk.flip();
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Ошибка записи файла плоскостей", e);
+            }
+            size++;
+        }
+
+        /**
+         * Копирует плоскость с номером index в target (создается, если равен null). При первом чтении файл
+         * отображается в память сегментами не больше 2 ГБ, границы которых совпадают с границами плоскостей.
+         */
+        int[] read(int index, int[] target) throws IOException {
+            int planeBytes = 4 * length;
+            int perSegment = Integer.MAX_VALUE / planeBytes;
+            if (segments == null) {
+                segments = new MappedByteBuffer[(size + perSegment - 1) / perSegment];
+                for (int s = 0; s < segments.length; s++) {
+                    int planes = Math.min(perSegment, size - s * perSegment);
+                    segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, (long) s * perSegment * planeBytes,
+                            (long) planes * planeBytes);
+                }
+            }
+            int[] plane = target != null ? target : new int[length];
+            segments[index / perSegment].slice(index % perSegment * planeBytes, planeBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(plane);
+            return plane;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Конструктор класса PairMatrix.
+     *
+     * @param scheduler Планировщик, на пуле которого считаются пары блоков.
+     * @param blockSize Количество изображений в блоке.
+     * @param keepMatrix true, чтобы сохранить значения всех пар, а не только агрегаты.
+     */
+    public PairMatrix(RenderScheduler scheduler, int blockSize, boolean keepMatrix) {
+        this.scheduler = scheduler;
+        this.blockSize = blockSize;
+        this.keepMatrix = keepMatrix;
+    }
+
+    /**
+     * Декодирует изображение в плоскость пикселей в формате getRGB.
+     *
+     * @param image Изображение.
+     * @return Пиксели по строкам (0xAARRGGBB).
+     */
+    public static int[] plane(BufferedImage image) {
+        PairMetrics.Raster raster = PairMetrics.raster(image);
+        if (!(image.getRaster().getDataBuffer() instanceof DataBufferInt buffer) || buffer.getData() != raster.pixels()) {
+            return raster.pixels(); // getRGB уже вернул отдельную копию, вторая не нужна
+        }
+        int[] plane = new int[raster.width() * raster.height()];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = raster.get(i);
+        }
+        return plane;
+    }
+
+    /**
+     * Возвращает номер пары (i, j), i < j, в матрице верхнего треугольника.
+     *
+     * @param i Номер первого изображения.
+     * @param j Номер второго изображения.
+     * @param n Количество изображений.
+     * @return Номер пары.
+     */
+    public static int index(int i, int j, int n) {
+        return (int) ((long) i * (2L * n - i - 1) / 2 + (j - i - 1));
+    }
+
+    /**
+     * Вычисляет метрики всех пар изображений.
+     *
+     * @param images Изображения одного размера.
+     * @return Матрицы и агрегаты.
+     */
+    public Result compute(BufferedImage[] images) {
+        int[][] planes = new int[images.length][];
+        List<CompletableFuture<Void>> decoding = new ArrayList<>();
+        for (int i = 0; i < images.length; i++) {
+            int k = i;
+            decoding.add(CompletableFuture.runAsync(() -> planes[k] = plane(images[k]), scheduler.getPool()));
+        }
+        CompletableFuture.allOf(decoding.toArray(new CompletableFuture<?>[0])).join();
+        return compute(planes);
+    }
+
+    /**
+     * Вычисляет метрики всех пар заранее декодированных изображений.
+     *
+     * @param planes Плоскости пикселей одинаковой длины (см. plane).
+     * @return Матрицы и агрегаты.
+     */
+    public Result compute(int[][] planes) {
+        int n = planes.length;
+        long pairs = (long) n * (n - 1) / 2;
+        if (keepMatrix && pairs > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много пар для хранения матрицы: " + pairs);
+        }
+        Totals totals = new Totals(keepMatrix ? (int) pairs : -1);
+        computePairs(planes, 0, planes, 0, n, totals);
+        return totals.toResult(n);
+    }
+
+    /**
+     * Вычисляет агрегаты метрик всех пар изображений корпуса, держа в памяти не больше budgetBytes пикселей.
+     * Если в папке spillDir хватает места (см. PlaneFile), каждое изображение декодируется один раз в файл
+     * плоскостей и проходы идут по нему; иначе файлы декодируются заново в каждом проходе. В каждом проходе
+     * очередной блок плоскостей остается в памяти, а все следующие подаются пачками и сравниваются с блоком.
+     * Матрицы пар не хранятся.
+     *
+     * Бюджет проверяется по размеру первого изображения до декодирования. Окно декодирования держит до prefetch
+     * изображений вместе с копией getRGB (по две плоскости на файл); при повторном декодировании оно находится
+     * в памяти одновременно с блоком и пачкой. Если бюджет не вмещает окно и блок хотя бы из одной плоскости вместе
+     * с пачкой, вычисление прерывается.
+     *
+     * @param corpus Корпус, через который декодируются изображения.
+     * @param files Файлы изображений.
+     * @param budgetBytes Наибольший объем пикселей в памяти.
+     * @param spillDir Папка для файла плоскостей или null, чтобы декодировать файлы в каждом проходе.
+     * @return Агрегаты (матрицы равны null); n — количество декодированных изображений.
+     * @throws IllegalArgumentException Если изображения разного размера или бюджет слишком мал.
+     * @throws IllegalStateException Если первый файл или файл плоскостей не удалось прочитать или записать.
+     */
+    public Result compute(ImageCorpus corpus, List<Path> files, long budgetBytes, Path spillDir) {
+        if (files.isEmpty()) {
+            return new Totals(-1).toResult(0);
+        }
+        try {
+            Dimension size = KeyImage.readSize(files.get(0));
+            long planeBytes = 4L * size.width * size.height;
+            long window = 2L * corpus.getPrefetch() * planeBytes;
+            if (window > budgetBytes) {
+                throw new IllegalArgumentException("Бюджет памяти " + budgetBytes + " байт меньше окна декодирования "
+                        + window + " байт");
+            }
+            PlaneFile planes = spillDir != null ? PlaneFile.open(spillDir, files) : null;
+            if (planes == null) {
+                System.out.println("Попарные метрики: файлы декодируются в каждом проходе");
+                return computeDecoding(corpus, files, planeBytes, budgetBytes - window);
+            }
+            try (planes) {
+                corpus.streamImages(files, 0, PairMetrics::raster, (raster, index) -> planes.add(raster));
+                return compute(planes, budgetBytes);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка чтения изображений или файла плоскостей", e);
+        }
+    }
+
+    /**
+     * Вычисляет агрегаты метрик всех пар плоскостей файла проходами по его отображению в память: блок прохода
+     * копируется в память, следующие плоскости читаются пачками. Массивы блока и пачки переиспользуются между
+     * проходами. Матрицы пар не хранятся.
+     *
+     * @param planes Файл плоскостей.
+     * @param budgetBytes Наибольший объем пикселей в памяти.
+     * @return Агрегаты (матрицы равны null).
+     * @throws IllegalArgumentException Если бюджет не вмещает блок из одной плоскости и пачку.
+     * @throws IllegalStateException Если файл плоскостей не удалось прочитать.
+     */
+    public Result compute(PlaneFile planes, long budgetBytes) {
+        Totals totals = new Totals(-1);
+        int n = planes.size();
+        if (n == 0) {
+            return totals.toResult(0);
+        }
+        int[] layout = layout(4L * planes.length, budgetBytes, n);
+        int[][] held = new int[layout[0]][];
+        int[][] batch = new int[layout[1]][];
+        int pass = 0;
+        try {
+            for (int start = 0; start < n; start += held.length) {
+                int blockLength = Math.min(held.length, n - start);
+                for (int k = 0; k < blockLength; k++) {
+                    held[k] = planes.read(start + k, held[k]);
+                }
+                int[][] block = blockLength == held.length ? held : Arrays.copyOf(held, blockLength);
+                computePairs(block, start, block, start, -1, totals);
+                for (int from = start + blockLength; from < n; from += batch.length) {
+                    int count = Math.min(batch.length, n - from);
+                    for (int k = 0; k < count; k++) {
+                        batch[k] = planes.read(from + k, batch[k]);
+                    }
+                    computePairs(block, start, count == batch.length ? batch : Arrays.copyOf(batch, count), from, -1,
+                            totals);
+                }
+                System.out.printf("Попарные метрики: проход %d, блок из %d изображений%n", ++pass, blockLength);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка чтения файла плоскостей", e);
+        }
+        return totals.toResult(n);
+    }
+
+    /**
+     * Считает пары проходами с повторным декодированием: в каждом проходе файлы декодируются начиная с блока,
+     * первые плоскости остаются в памяти как блок, а следующие сравниваются с ним пачками.
+     *
+     * @param budgetBytes Бюджет для блока и пачки (окно декодирования уже вычтено).
+     */
+    private Result computeDecoding(ImageCorpus corpus, List<Path> files, long planeBytes, long budgetBytes) {
+        Totals totals = new Totals(-1);
+        int[] layout = layout(planeBytes, budgetBytes, files.size());
+        int[] decoded = new int[1]; // Количество декодированных изображений (считается в первом проходе)
+        int start = 0;
+        for (int pass = 0; start < files.size(); pass++) {
+            boolean first = pass == 0;
+            List<int[]> held = new ArrayList<>(); // Блок прохода
+            List<int[]> batch = new ArrayList<>(); // Пачка изображений после блока
+            int[] end = {files.size()}; // Номер файла, следующего за блоком
+            int[] streamed = {0}; // Изображений, сравненных с блоком
+            corpus.streamImages(files, start, PairMatrix::plane, (plane, index) -> {
+                if (first) {
+                    decoded[0]++;
+                }
+                if (held.size() < layout[0]) {
+                    held.add(plane);
+                    end[0] = index + 1;
+                    return;
+                }
+                batch.add(plane);
+                if (batch.size() == layout[1]) {
+                    compareBatch(held, batch, streamed[0], totals);
+                    streamed[0] += batch.size();
+                    batch.clear();
+                }
+            });
+            int[][] block = held.toArray(new int[0][]);
+            computePairs(block, 0, block, 0, -1, totals);
+            compareBatch(held, batch, streamed[0], totals);
+            System.out.printf("Попарные метрики: проход %d, блок из %d изображений%n", pass + 1, block.length);
+            start = end[0];
+        }
+        return totals.toResult(decoded[0]);
+    }
+
+    /**
+     * Сравнивает пачку потоковых изображений с блоком.
+     */
+    private void compareBatch(List<int[]> held, List<int[]> batch, int offset, Totals totals) {
+        if (!batch.isEmpty()) {
+            computePairs(held.toArray(new int[0][]), 0, batch.toArray(new int[0][]), held.size() + offset,
+                    -1, totals);
+        }
+    }
+
+    /**
+     * Делит бюджет между блоком прохода и пачкой. Пачка берется из parallelism * blockSize плоскостей (но не больше
+     * половины бюджета и не меньше blockSize), чтобы пар блоков хватало на все потоки пула; остальное занимает блок.
+     *
+     * @return Количество плоскостей в блоке и в пачке (не больше n).
+     * @throws IllegalArgumentException Если бюджет не вмещает блок из одной плоскости и пачку из blockSize плоскостей.
+     */
+    private int[] layout(long planeBytes, long budgetBytes, int n) {
+        long total = budgetBytes / planeBytes;
+        long batch = Math.max(blockSize, Math.min((long) scheduler.getPool().getParallelism() * blockSize, total / 2));
+        if (total - batch < 1) {
+            throw new IllegalArgumentException("Бюджет памяти " + budgetBytes + " байт меньше блока из одной плоскости "
+                    + "и пачки из " + batch + " плоскостей по " + planeBytes + " байт");
+        }
+        return new int[]{(int) Math.min(n, total - batch), (int) Math.min(n, batch)};
+    }
+
+    /**
+     * Считает пары (i, j), i < j, между строками rows (номера rowBase + k) и столбцами columns (номера
+     * columnBase + k), разбивая их на блоки по blockSize и распределяя пары блоков по пулу планировщика.
+     *
+     * @param n Количество изображений для адресации матриц (не используется, если матрицы не хранятся).
+     */
+    private void computePairs(int[][] rows, int rowBase, int[][] columns, int columnBase, int n, Totals totals) {
+        for (int[] plane : columns) {
+            if (plane.length != rows[0].length) {
+                throw new IllegalArgumentException("Изображения набора должны быть одного размера");
+            }
+        }
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int fromI = 0; fromI < rows.length; fromI += blockSize) {
+            for (int fromJ = 0; fromJ < columns.length; fromJ += blockSize) {
+                int toI = Math.min(fromI + blockSize, rows.length);
+                int toJ = Math.min(fromJ + blockSize, columns.length);
+                if (rowBase + fromI >= columnBase + toJ - 1) {
+                    continue; // В паре блоков нет пар i < j
+                }
+                int blockI = fromI;
+                int blockJ = fromJ;
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    Totals part = new Totals(-1);
+                    computeBlock(rows, rowBase, blockI, toI, columns, columnBase, blockJ, toJ, n, part, totals);
+                    totals.merge(part);
+                }, scheduler.getPool()));
+            }
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Считает пары (i, j), i < j, из блоков строк [fromI, toI) и столбцов [fromJ, toJ) участок за участком.
+     * Агрегаты копятся в part, значения пар записываются в матрицы totals.
+     */
+    private static void computeBlock(int[][] rows, int rowBase, int fromI, int toI, int[][] columns, int columnBase,
+                                     int fromJ, int toJ, int n, Totals part, Totals totals) {
+        int length = rows[0].length;
+        int width = toJ - fromJ;
+        int pairs = (toI - fromI) * width;
+        long[] absDiff = new long[pairs]; // Сумма |r1 - r2| по красному каналу
+        long[] diffPixels = new long[pairs]; // Количество различающихся пикселей
+        long[] diffBits = new long[pairs]; // Количество различающихся битов
+
+        for (int from = 0; from < length; from += CHUNK_PIXELS) {
+            int to = Math.min(from + CHUNK_PIXELS, length);
+            for (int i = fromI; i < toI; i++) {
+                int[] a = rows[i];
+                for (int j = Math.max(fromJ, rowBase + i + 1 - columnBase); j < toJ; j++) {
+                    int[] b = columns[j];
+                    long abs = 0;
+                    long pixels = 0;
+                    long bits = 0;
+                    for (int k = from; k < to; k++) {
+                        int x = a[k];
+                        int y = b[k];
+                        int d = x ^ y;
+                        bits += Integer.bitCount(d);
+                        pixels += d != 0 ? 1 : 0;
+                        abs += Math.abs(((x >> 16) & 0xFF) - ((y >> 16) & 0xFF));
+                    }
+                    int p = (i - fromI) * width + (j - fromJ);
+                    absDiff[p] += abs;
+                    diffPixels[p] += pixels;
+                    diffBits[p] += bits;
+                }
+            }
+        }
+
+        for (int i = fromI; i < toI; i++) {
+            for (int j = Math.max(fromJ, rowBase + i + 1 - columnBase); j < toJ; j++) {
+                int p = (i - fromI) * width + (j - fromJ);
+                double u = absDiff[p] / (255.0 * length) * 100;
+                double v = (double) diffPixels[p] / length * 100;
+                double f = diffBits[p] / (32.0 * length) * 100;
+                part.uaciTotal.add(u);
+                part.npcrTotal.add(v);
+                part.nfcTotal.add(f);
+                if (totals.uaci != null) {
+                    int index = index(rowBase + i, columnBase + j, n);
+                    totals.uaci[index] = (float) u;
+                    totals.npcr[index] = (float) v;
+                    totals.nfc[index] = (float) f;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
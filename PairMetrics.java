@@ -0,0 +1,155 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Set;
+
+/**
+ * Класс PairMetrics вычисляет метрики сравнения двух изображений за один проход по строкам: коэффициент корреляции
+ * Пирсона и SSIM по красному каналу, процент совпадающих пикселей, UACI, NPCR и NFC. Пиксели извлекаются один раз
+ * целым массивом (для изображений TYPE_INT_RGB и TYPE_INT_ARGB — прямо из DataBufferInt без копирования),
+ * вместо двух вызовов getRGB на пиксель. Считаются только запрошенные метрики, остальные в результате равны NaN.
+ *
+ * Суммы по красному каналу накапливаются в long и точны, поэтому Пирсон совпадает с прежним расчетом,
+ * а SSIM считается по тем же суммам за один проход вместо двух.
+ */
+public class PairMetrics {
+
+    /**
+     * Метрика сравнения двух изображений.
+     */
+    public enum Metric {
+        PEARSON, // Коэффициент корреляции Пирсона по красному каналу
+        SSIM, // Упрощенный (глобальный) SSIM по красному каналу
+        PIXEL_MATCH, // Процент совпадающих пикселей
+        UACI, // Средняя интенсивность изменения красного канала, %
+        NPCR, // Процент различающихся пикселей
+        NFC // Процент различающихся битов ARGB
+    }
+
+    /**
+     * Результат сравнения; незапрошенные метрики равны NaN.
+     */
+    public record Result(double pearson, double ssim, double pixelMatch, double uaci, double npcr, double nfc) {
+    }
+
+    /**
+     * Пиксели изображения по строкам в формате getRGB (0xAARRGGBB).
+     *
+     * @param pixels Массив пикселей (может разделять память с изображением, изменять его нельзя).
+     * @param alpha Маска, которую нужно наложить на каждый пиксель, чтобы получить значение getRGB.
+     * @param width Ширина изображения.
+     * @param height Высота изображения.
+     */
+    public record Raster(int[] pixels, int alpha, int width, int height) {
+        public int get(int index) {
+            return pixels[index] | alpha;
+        }
+    }
+
+    /**
+     * Извлекает пиксели изображения одним обращением.
+     *
+     * @param image Изображение.
+     * @return Пиксели в формате getRGB.
+     */
+    public static Raster raster(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt buffer
+                && buffer.getNumBanks() == 1 && buffer.getOffset() == 0
+                && image.getRaster().getParent() == null && buffer.getData().length == width * height) {
+            // В TYPE_INT_RGB старший байт не хранится, getRGB возвращает его как 0xFF
+            return new Raster(buffer.getData(), type == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0, width, height);
+        }
+        return new Raster(image.getRGB(0, 0, width, height, null, 0, width), 0, width, height);
+    }
+
+    /**
+     * Вычисляет запрошенные метрики для двух изображений одного размера.
+     *
+     * @param img1 Первое изображение.
+     * @param img2 Второе изображение.
+     * @param metrics Набор метрик.
+     * @return Результат сравнения.
+     */
+    public static Result compute(BufferedImage img1, BufferedImage img2, Set<Metric> metrics) {
+        return compute(raster(img1), raster(img2), metrics);
+    }
+
+    /**
+     * Вычисляет запрошенные метрики для двух заранее извлеченных изображений одного размера.
+     *
+     * @param a Пиксели первого изображения.
+     * @param b Пиксели второго изображения.
+     * @param metrics Набор метрик.
+     * @return Результат сравнения.
+     */
+    public static Result compute(Raster a, Raster b, Set<Metric> metrics) {
+        if (a.width() != b.width() || a.height() != b.height()) {
+            throw new IllegalArgumentException("Размеры изображений не совпадают: " + a.width() + "x" + a.height()
+                    + " и " + b.width() + "x" + b.height());
+        }
+        boolean moments = metrics.contains(Metric.PEARSON) || metrics.contains(Metric.SSIM);
+        boolean uaci = metrics.contains(Metric.UACI);
+        boolean nfc = metrics.contains(Metric.NFC);
+        boolean matches = metrics.contains(Metric.PIXEL_MATCH) || metrics.contains(Metric.NPCR);
+
+        int[] p1 = a.pixels();
+        int[] p2 = b.pixels();
+        int alpha1 = a.alpha();
+        int alpha2 = b.alpha();
+        int n = a.width() * a.height();
+        long sum1 = 0, sum2 = 0, sum1Sq = 0, sum2Sq = 0, pSum = 0;
+        long absDiff = 0;
+        long diffBits = 0;
+        long matchCount = 0;
+
+        for (int i = 0; i < n; i++) {
+            int rgb1 = p1[i] | alpha1;
+            int rgb2 = p2[i] | alpha2;
+            if (moments || uaci) {
+                int r1 = (rgb1 >> 16) & 0xFF;
+                int r2 = (rgb2 >> 16) & 0xFF;
+                if (moments) {
+                    sum1 += r1;
+                    sum2 += r2;
+                    sum1Sq += r1 * r1;
+                    sum2Sq += r2 * r2;
+                    pSum += r1 * r2;
+                }
+                if (uaci) {
+                    absDiff += Math.abs(r1 - r2);
+                }
+            }
+            if (matches && rgb1 == rgb2) {
+                matchCount++;
+            }
+            if (nfc) {
+                diffBits += Integer.bitCount(rgb1 ^ rgb2);
+            }
+        }
+
+        double pearson = Double.NaN;
+        if (metrics.contains(Metric.PEARSON)) {
+            double num = pSum - ((double) sum1 * sum2 / n);
+            double den = Math.sqrt((sum1Sq - (double) sum1 * sum1 / n) * (sum2Sq - (double) sum2 * sum2 / n));
+            pearson = den == 0 ? 0 : num / den;
+        }
+        double ssim = Double.NaN;
+        if (metrics.contains(Metric.SSIM)) {
+            double avg1 = (double) sum1 / n;
+            double avg2 = (double) sum2 / n;
+            double var1 = (sum1Sq - (double) sum1 * sum1 / n) / n;
+            double var2 = (sum2Sq - (double) sum2 * sum2 / n) / n;
+            double cov = (pSum - (double) sum1 * sum2 / n) / n;
+            double c1 = 6.5025, c2 = 58.5225;
+            ssim = ((2 * avg1 * avg2 + c1) * (2 * cov + c2)) / ((avg1 * avg1 + avg2 * avg2 + c1) * (var1 + var2 + c2));
+        }
+        return new Result(pearson, ssim,
+                metrics.contains(Metric.PIXEL_MATCH) ? (double) matchCount / n * 100 : Double.NaN,
+                uaci ? (double) absDiff / (255.0 * n) * 100 : Double.NaN,
+                metrics.contains(Metric.NPCR) ? (double) (n - matchCount) / n * 100 : Double.NaN,
+                nfc ? (double) diffBits / (32.0 * n) * 100 : Double.NaN);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Класс Palette переводит поле итераций в цвета по таблице (LUT) длины MAX_ITER + 1.
+ * Раскраска выполняется параллельно полосами строк и не требует повторного рендеринга,
+ * поэтому смена палитры обходится практически бесплатно.
+ */
+public class Palette {
+    private static final int BAND_HEIGHT = 32; // Высота полосы строк для параллельной раскраски
+
+    private final int[] table; // Цвет для каждого значения поля итераций
+
+    /**
+     * Создает палитру по готовой таблице цветов.
+     *
+     * @param table Цвета в формате 0xRRGGBB для значений 0..MAX_ITER.
+     */
+    public Palette(int[] table) {
+        this.table = table;
+    }
+
+    /**
+     * Создает классическую палитру генератора: i | (i << 10) | (i << 14), черный для точек множества.
+     *
+     * @param MAX_ITER Максимальное количество итераций.
+     * @return Классическая палитра.
+     */
+    public static Palette classic(int MAX_ITER) {
+        int[] table = new int[MAX_ITER + 1];
+        for (int i = 0; i <= MAX_ITER; i++) {
+            table[i] = MandelbrotThread.toColor(i);
+        }
+        return new Palette(table);
+    }
+
+    public int[] getTable() {
+        return table;
+    }
+
+    public int color(int count) {
+        return table[count];
+    }
+
+    /**
+     * Раскрашивает поле итераций в буфер кадра параллельно полосами строк.
+     *
+     * @param field Поле итераций.
+     * @param frame Буфер кадра того же размера.
+     * @param scheduler Планировщик, на пуле которого выполняется раскраска.
+     * @return Future, завершающийся этим же буфером.
+     */
+    public CompletableFuture<FrameBuffer> colorize(IterationField field, FrameBuffer frame, RenderScheduler scheduler) {
+        short[] counts = field.getCounts();
+        int[] pixels = frame.getPixels();
+        int width = field.getWidth();
+        List<CompletableFuture<Void>> bands = new ArrayList<>();
+        for (int startY = 0; startY < field.getHeight(); startY += BAND_HEIGHT) {
+            int from = startY * width;
+            int to = Math.min(startY + BAND_HEIGHT, field.getHeight()) * width;
+            bands.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    pixels[i] = table[counts[i] & 0xFFFF];
+                }
+            }, scheduler.getPool()));
+        }
+        return CompletableFuture.allOf(bands.toArray(new CompletableFuture<?>[0])).thenApply(v -> frame);
+    }
+
+    /**
+     * Создает новое изображение по полю итераций.
+     *
+     * @param field Поле итераций.
+     * @param scheduler Планировщик, на пуле которого выполняется раскраска.
+     * @return Раскрашенное изображение.
+     */
+    public BufferedImage toImage(IterationField field, RenderScheduler scheduler) {
+        FrameBuffer frame = new FrameBuffer(field.getWidth(), field.getHeight());
+        return colorize(field, frame, scheduler).join().getImage();
+    }
+}
\ No newline at end of file
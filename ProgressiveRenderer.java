@@ -0,0 +1,354 @@
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Класс ProgressiveRenderer рендерит кадр интерактивного просмотрщика в фоне, не занимая поток событий Swing.
+ * Кадр считается несколькими проходами с шагом 8, 4, 2 и 1 пиксель: на каждом проходе вычисляется одна точка
+ * на блок шаг x шаг, и блок заливается ее цветом. Точки предыдущего прохода не пересчитываются — каждая
+ * следующая сетка вдвое мельче и содержит предыдущую. Строки блоков считаются параллельно на пуле планировщика.
+ *
+ * Каждый проход пишет в новый буфер и по завершении передает его обработчику, поэтому отображаемое изображение
+ * никогда не меняется во время отрисовки. Новый запрос отменяет текущий рендеринг: задачи сверяют номер поколения
+ * перед каждой строкой и выходят, если он устарел, а результаты устаревших проходов не публикуются.
+ *
+ * Если задан кэш плиток (setTileCache), кадр собирается из плиток TileCache на решетке мировых пикселей уровня,
+ * а смещение вида округляется до целого мирового пикселя. Сначала публикуется заглушка: предыдущий кадр,
+ * перенесенный в новый вид с учетом сдвига и масштаба, поверх которого лежат уже известные плитки. Затем
+ * недостающие плитки считаются грубо (шаг 8) и, наконец, полностью; готовые плитки попадают в кэш даже при отмене
+ * рендеринга, поэтому при возврате к посещенному виду кадр собирается из кэша без пересчета.
+ */
+public class ProgressiveRenderer {
+    public static final int[] PASSES = {8, 4, 2, 1}; // Шаги проходов от грубого к полному разрешению
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считаются строки
+    private final Consumer<BufferedImage> onPass; // Обработчик завершенного прохода
+    private final AtomicLong generation = new AtomicLong(); // Номер текущего запроса
+    private volatile EscapeKernel kernel; // Ядро подсчета времени выхода
+    private volatile TileCache tileCache; // Кэш плиток или null
+    private volatile Published last; // Последний опубликованный кадр для заглушки следующего вида
+
+    /**
+     * Параметры отображаемого вида. Отображение пикселя в точку: (x - width / 2) / ZOOM + offsetX
+     * (целочисленное деление, как в MandelbrotOld).
+     */
+    public static class View {
+        public final int width; // Ширина кадра
+        public final int height; // Высота кадра
+        public final double ZOOM; // Уровень масштабирования
+        public final int MAX_ITER; // Максимальное количество итераций
+        public final double offsetX; // Смещение по оси X
+        public final double offsetY; // Смещение по оси Y
+
+        public View(int width, int height, double ZOOM, int MAX_ITER, double offsetX, double offsetY) {
+            this.width = width;
+            this.height = height;
+            this.ZOOM = ZOOM;
+            this.MAX_ITER = MAX_ITER;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        public double toReal(int x) {
+            return (x - width / 2) / ZOOM + offsetX;
+        }
+
+        public double toImaginary(int y) {
+            return (y - height / 2) / ZOOM + offsetY;
+        }
+    }
+
+    /**
+     * Опубликованный кадр и положение его левого верхнего пикселя в мировых пикселях уровня ZOOM.
+     */
+    private static class Published {
+        final BufferedImage image; // Изображение кадра
+        final double ZOOM; // Уровень масштабирования кадра
+        final double originX; // Мировая координата X левого верхнего пикселя
+        final double originY; // Мировая координата Y левого верхнего пикселя
+
+        Published(BufferedImage image, double ZOOM, double originX, double originY) {
+            this.image = image;
+            this.ZOOM = ZOOM;
+            this.originX = originX;
+            this.originY = originY;
+        }
+    }
+
+    /**
+     * Конструктор класса ProgressiveRenderer.
+     *
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     * @param onPass Обработчик, получающий изображение после каждого завершенного прохода (вызывается из пула).
+     */
+    public ProgressiveRenderer(RenderScheduler scheduler, EscapeKernel kernel, Consumer<BufferedImage> onPass) {
+        this.scheduler = scheduler;
+        this.kernel = kernel;
+        this.onPass = onPass;
+    }
+
+    public void setKernel(EscapeKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Задает кэш плиток. Плитки в кэше должны быть посчитаны тем же ядром и той же палитрой.
+     *
+     * @param tileCache Кэш плиток или null, чтобы рендерить кадр проходами без кэша.
+     */
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Отменяет текущий рендеринг и запускает новый. Возвращает управление сразу.
+     *
+     * @param view Параметры вида.
+     * @param palette Палитра для значений 0..MAX_ITER.
+     * @return Future, завершающийся после последнего прохода либо после отмены.
+     */
+    public CompletableFuture<Void> render(View view, Palette palette) {
+        long current = generation.incrementAndGet();
+        EscapeKernel kernel = this.kernel;
+        TileCache tileCache = this.tileCache;
+        if (tileCache != null) {
+            return renderTiles(current, view, palette, kernel, tileCache);
+        }
+        CompletableFuture<int[]> chain = CompletableFuture.completedFuture(null);
+        for (int step : PASSES) {
+            chain = chain.thenCompose(previous -> {
+                if (previous == null && step != PASSES[0] || generation.get() != current) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return pass(current, view, palette, kernel, step, previous);
+            });
+        }
+        return chain.thenApply(pixels -> null);
+    }
+
+    /**
+     * Отменяет текущий рендеринг.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private CompletableFuture<int[]> pass(long current, View view, Palette palette, EscapeKernel kernel, int step,
+                                          int[] previous) {
+        FrameBuffer frame = new FrameBuffer(view.width, view.height);
+        int[] pixels = frame.getPixels();
+        if (previous != null) {
+            System.arraycopy(previous, 0, pixels, 0, pixels.length);
+        }
+        List<CompletableFuture<Void>> rows = new ArrayList<>();
+        for (int startY = 0; startY < view.height; startY += step) {
+            int y = startY;
+            rows.add(CompletableFuture.runAsync(() -> {
+                if (generation.get() != current) {
+                    return;
+                }
+                renderRow(view, palette, kernel, step, y, previous, pixels);
+            }, scheduler.getPool()));
+        }
+        return CompletableFuture.allOf(rows.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            if (!publish(current, frame, view.ZOOM, view.offsetX * view.ZOOM - view.width / 2,
+                    view.offsetY * view.ZOOM - view.height / 2)) {
+                return null;
+            }
+            return pixels;
+        });
+    }
+
+    /**
+     * Собирает кадр из плиток кэша: заглушка из предыдущего кадра и известных плиток, затем грубый и полный расчет
+     * недостающих плиток. Каждый этап пишет в новый буфер, копию предыдущего.
+     */
+    private CompletableFuture<Void> renderTiles(long current, View view, Palette palette, EscapeKernel kernel,
+                                                TileCache tileCache) {
+        int size = TileCache.TILE_SIZE;
+        long originX = Math.round(view.offsetX * view.ZOOM) - view.width / 2;
+        long originY = Math.round(view.offsetY * view.ZOOM) - view.height / 2;
+        long firstX = Math.floorDiv(originX, size);
+        long firstY = Math.floorDiv(originY, size);
+        int columns = (int) (Math.floorDiv(originX + view.width - 1, size) - firstX + 1);
+        int rows = (int) (Math.floorDiv(originY + view.height - 1, size) - firstY + 1);
+
+        FrameBuffer placeholder = new FrameBuffer(view.width, view.height);
+        reproject(placeholder, view.ZOOM, originX, originY);
+        List<TileCache.Key> missing = new ArrayList<>();
+        for (int k : RenderScheduler.spreadOrder(columns, rows)) {
+            TileCache.Key key = new TileCache.Key(view.ZOOM, view.MAX_ITER, firstX + k % columns, firstY + k / columns);
+            int[] tile = tileCache.get(key);
+            if (tile != null) {
+                copyTile(tile, key, placeholder, originX, originY);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!publish(current, placeholder, view.ZOOM, originX, originY) || missing.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        int coarseStep = PASSES[0];
+        return tilePass(current, view, palette, kernel, missing, coarseStep, placeholder, originX, originY, null)
+                .thenCompose(coarse -> coarse == null ? CompletableFuture.completedFuture(null)
+                        : tilePass(current, view, palette, kernel, missing, 1, coarse, originX, originY, tileCache))
+                .thenApply(frame -> null);
+    }
+
+    /**
+     * Считает недостающие плитки с указанным шагом в копию предыдущего буфера и публикует ее.
+     * Плитки полного разрешения кладутся в кэш сразу после расчета.
+     *
+     * @return Future с опубликованным буфером или null, если рендеринг отменен.
+     */
+    private CompletableFuture<FrameBuffer> tilePass(long current, View view, Palette palette, EscapeKernel kernel,
+                                                    List<TileCache.Key> keys, int step, FrameBuffer previous,
+                                                    long originX, long originY, TileCache tileCache) {
+        FrameBuffer frame = new FrameBuffer(view.width, view.height);
+        System.arraycopy(previous.getPixels(), 0, frame.getPixels(), 0, frame.getPixels().length);
+        List<CompletableFuture<Void>> tiles = new ArrayList<>();
+        for (TileCache.Key key : keys) {
+            tiles.add(CompletableFuture.runAsync(() -> {
+                int[] tile = renderTile(current, view, palette, kernel, key, step);
+                if (tile == null) {
+                    return;
+                }
+                if (tileCache != null) {
+                    tileCache.put(key, tile);
+                }
+                copyTile(tile, key, frame, originX, originY);
+            }, scheduler.getPool()));
+        }
+        return CompletableFuture.allOf(tiles.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> publish(current, frame, view.ZOOM, originX, originY) ? frame : null);
+    }
+
+    /**
+     * Считает плитку: точка (X, Y) решетки уровня соответствует c = (X / ZOOM, Y / ZOOM),
+     * блок step x step заливается цветом своей левой верхней точки.
+     *
+     * @return Цвета плитки по строкам или null, если рендеринг отменен.
+     */
+    private int[] renderTile(long current, View view, Palette palette, EscapeKernel kernel, TileCache.Key key,
+                             int step) {
+        int size = TileCache.TILE_SIZE;
+        int[] tile = new int[size * size];
+        int n = size / step;
+        double[] cXs = new double[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            cXs[i] = (key.tx * size + i * step) / view.ZOOM;
+        }
+        for (int y = 0; y < size; y += step) {
+            if (generation.get() != current) {
+                return null;
+            }
+            kernel.escapeRow(cXs, (key.ty * size + y) / view.ZOOM, view.MAX_ITER, counts);
+            for (int i = 0; i < n; i++) {
+                int color = palette.color(counts[i]);
+                for (int row = y; row < y + step; row++) {
+                    Arrays.fill(tile, row * size + i * step, row * size + (i + 1) * step, color);
+                }
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Копирует видимую часть плитки в буфер кадра.
+     */
+    private static void copyTile(int[] tile, TileCache.Key key, FrameBuffer frame, long originX, long originY) {
+        int size = TileCache.TILE_SIZE;
+        long left = key.tx * size - originX;
+        long top = key.ty * size - originY;
+        int fromX = (int) Math.max(0, -left);
+        int toX = (int) Math.min(size, frame.getWidth() - left);
+        int fromY = (int) Math.max(0, -top);
+        int toY = (int) Math.min(size, frame.getHeight() - top);
+        int[] pixels = frame.getPixels();
+        for (int y = fromY; y < toY; y++) {
+            System.arraycopy(tile, y * size + fromX, pixels, (int) ((top + y) * frame.getWidth() + left + fromX),
+                    toX - fromX);
+        }
+    }
+
+    /**
+     * Переносит последний опубликованный кадр в новый вид: мировые пиксели старого уровня пересчитываются
+     * в мировые пиксели нового уровня умножением на отношение масштабов.
+     */
+    private void reproject(FrameBuffer frame, double ZOOM, double originX, double originY) {
+        Published last = this.last;
+        if (last == null) {
+            return;
+        }
+        double scale = ZOOM / last.ZOOM;
+        Graphics2D g = frame.getImage().createGraphics();
+        g.drawImage(last.image, new AffineTransform(scale, 0, 0, scale,
+                last.originX * scale - originX, last.originY * scale - originY), null);
+        g.dispose();
+    }
+
+    /**
+     * Передает кадр обработчику, если запрос не устарел, и запоминает его для заглушки следующего вида.
+     *
+     * @return true, если кадр опубликован.
+     */
+    private boolean publish(long current, FrameBuffer frame, double ZOOM, double originX, double originY) {
+        if (generation.get() != current) {
+            return false;
+        }
+        last = new Published(frame.getImage(), ZOOM, originX, originY);
+        onPass.accept(frame.getImage());
+        return true;
+    }
+
+    /**
+     * Считает одну строку блоков: точки, которых не было в предыдущем проходе, вычисляются одним вызовом escapeRow,
+     * а каждый блок step x step заливается цветом своей левой верхней точки.
+     */
+    private static void renderRow(View view, Palette palette, EscapeKernel kernel, int step, int y, int[] previous,
+                                  int[] pixels) {
+        int width = view.width;
+        boolean knownRow = previous != null && y % (2 * step) == 0;
+        int blocks = (width + step - 1) / step;
+        double[] cXs = new double[blocks];
+        int[] xs = new int[blocks];
+        int n = 0;
+        for (int x = 0; x < width; x += step) {
+            if (!(knownRow && x % (2 * step) == 0)) {
+                xs[n] = x;
+                cXs[n] = view.toReal(x);
+                n++;
+            }
+        }
+        int[] counts = new int[n];
+        if (n == blocks) {
+            kernel.escapeRow(cXs, view.toImaginary(y), view.MAX_ITER, counts);
+        } else {
+            double[] needed = new double[n];
+            System.arraycopy(cXs, 0, needed, 0, n);
+            kernel.escapeRow(needed, view.toImaginary(y), view.MAX_ITER, counts);
+        }
+
+        int endY = Math.min(y + step, view.height);
+        int k = 0;
+        for (int x = 0; x < width; x += step) {
+            int color = k < n && xs[k] == x ? palette.color(counts[k++]) : pixels[y * width + x];
+            int endX = Math.min(x + step, width);
+            for (int row = y; row < endY; row++) {
+                int offset = row * width;
+                for (int column = x; column < endX; column++) {
+                    pixels[offset + column] = color;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
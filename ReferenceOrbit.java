@@ -0,0 +1,143 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Класс ReferenceOrbit хранит опорную орбиту Z_n для одной точки C, вычисленную в произвольной точности (BigDecimal)
+ * и округленную до double. Вместе с орбитой вычисляются коэффициенты ряда A_n, B_n, C_n, которые позволяют
+ * пропустить первые итерации всех пикселей кадра: dz_n ~ A_n * dc + B_n * dc^2 + C_n * dc^3.
+ * Одна орбита используется всеми пикселями кадра (и может переиспользоваться между кадрами с тем же центром).
+ */
+public class ReferenceOrbit {
+    private final BigDecimal cX; // Действительная часть опорной точки
+    private final BigDecimal cY; // Мнимая часть опорной точки
+    private final int maxIter; // Максимальное количество итераций, для которого вычислена орбита
+    private final int length; // Номер первой точки орбиты за кругом радиуса 2 либо maxIter
+    private final double[] zr; // Действительные части Z_0..Z_length
+    private final double[] zi; // Мнимые части Z_0..Z_length
+    private final double[] ar, ai, br, bi, sr, si; // Коэффициенты ряда A_n, B_n, C_n
+
+    /**
+     * Вычисляет опорную орбиту.
+     *
+     * @param cX Действительная часть опорной точки.
+     * @param cY Мнимая часть опорной точки.
+     * @param MAX_ITER Максимальное количество итераций.
+     * @param mc Точность вычислений.
+     */
+    public ReferenceOrbit(BigDecimal cX, BigDecimal cY, int MAX_ITER, MathContext mc) {
+        this.cX = cX;
+        this.cY = cY;
+        this.maxIter = MAX_ITER;
+        this.zr = new double[MAX_ITER + 1];
+        this.zi = new double[MAX_ITER + 1];
+        this.ar = new double[MAX_ITER + 1];
+        this.ai = new double[MAX_ITER + 1];
+        this.br = new double[MAX_ITER + 1];
+        this.bi = new double[MAX_ITER + 1];
+        this.sr = new double[MAX_ITER + 1];
+        this.si = new double[MAX_ITER + 1];
+
+        BigDecimal x = BigDecimal.ZERO;
+        BigDecimal y = BigDecimal.ZERO;
+        BigDecimal two = BigDecimal.valueOf(2);
+        int n = 0;
+        while (true) {
+            zr[n] = x.doubleValue();
+            zi[n] = y.doubleValue();
+            if (zr[n] * zr[n] + zi[n] * zi[n] >= 4 || n == MAX_ITER) {
+                break;
+            }
+
+            // A_{n+1} = 2 Z_n A_n + 1, B_{n+1} = 2 Z_n B_n + A_n^2, C_{n+1} = 2 Z_n C_n + 2 A_n B_n
+            double tzr = 2 * zr[n];
+            double tzi = 2 * zi[n];
+            ar[n + 1] = tzr * ar[n] - tzi * ai[n] + 1;
+            ai[n + 1] = tzr * ai[n] + tzi * ar[n];
+            br[n + 1] = tzr * br[n] - tzi * bi[n] + ar[n] * ar[n] - ai[n] * ai[n];
+            bi[n + 1] = tzr * bi[n] + tzi * br[n] + 2 * ar[n] * ai[n];
+            sr[n + 1] = tzr * sr[n] - tzi * si[n] + 2 * (ar[n] * br[n] - ai[n] * bi[n]);
+            si[n + 1] = tzr * si[n] + tzi * sr[n] + 2 * (ar[n] * bi[n] + ai[n] * br[n]);
+
+            BigDecimal tmp = x.multiply(x, mc).subtract(y.multiply(y, mc), mc).add(cX, mc);
+            y = two.multiply(x, mc).multiply(y, mc).add(cY, mc);
+            x = tmp;
+            n++;
+        }
+        this.length = n;
+    }
+
+    /**
+     * Подбирает точность вычислений для указанного масштаба: число значащих цифр размера пикселя плюс запас.
+     *
+     * @param ZOOM Уровень масштабирования.
+     * @return Контекст точности для BigDecimal.
+     */
+    public static MathContext precisionFor(double ZOOM) {
+        int digits = (int) Math.ceil(Math.log10(Math.max(ZOOM, 1))) + 20;
+        return new MathContext(Math.max(digits, 34));
+    }
+
+    /**
+     * Находит номер итерации, до которой ряд достаточно точен для всех точек с |dc| <= maxDelta и ни одна
+     * такая точка гарантированно не покидает круг радиуса 2.
+     *
+     * @param maxDelta Максимальное расстояние от опорной точки до пикселей кадра.
+     * @param tolerance Допустимое отношение третьего члена ряда ко второму.
+     * @return Количество итераций, которые можно пропустить.
+     */
+    public int seriesSkip(double maxDelta, double tolerance) {
+        int skip = 0;
+        for (int n = 1; n < length; n++) {
+            double a = Math.hypot(ar[n], ai[n]) * maxDelta;
+            double b = Math.hypot(br[n], bi[n]) * maxDelta * maxDelta;
+            double c = Math.hypot(sr[n], si[n]) * maxDelta * maxDelta * maxDelta;
+            if (!Double.isFinite(a + b + c) || c > tolerance * b || Math.hypot(zr[n], zi[n]) + a + b + c >= 2) {
+                break;
+            }
+            skip = n;
+        }
+        return skip;
+    }
+
+    public BigDecimal getCX() {
+        return cX;
+    }
+
+    public BigDecimal getCY() {
+        return cY;
+    }
+
+    public int getMaxIter() {
+        return maxIter;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    double[] zr() {
+        return zr;
+    }
+
+    double[] zi() {
+        return zi;
+    }
+
+    /**
+     * Возвращает приближение dz_n по ряду.
+     *
+     * @param n Номер итерации.
+     * @param dcr Действительная часть dc.
+     * @param dci Мнимая часть dc.
+     * @return Массив {Re dz_n, Im dz_n}.
+     */
+    double[] series(int n, double dcr, double dci) {
+        double dc2r = dcr * dcr - dci * dci;
+        double dc2i = 2 * dcr * dci;
+        double dc3r = dc2r * dcr - dc2i * dci;
+        double dc3i = dc2r * dci + dc2i * dcr;
+        double re = ar[n] * dcr - ai[n] * dci + br[n] * dc2r - bi[n] * dc2i + sr[n] * dc3r - si[n] * dc3i;
+        double im = ar[n] * dci + ai[n] * dcr + br[n] * dc2i + bi[n] * dc2r + sr[n] * dc3i + si[n] * dc3r;
+        return new double[]{re, im};
+    }
+}
\ No newline at end of file
@@ -0,0 +1,312 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс RenderMetrics собирает метрики генерации ключей и публикует их по JMX (см. RenderMetricsMBean):
+ * готовые ключи, попытки и причины отказов, пиксели и итерации в секунду, гистограмму времени рендеринга плиток
+ * и глубину очередей конвейера. Счетчики — LongAdder, поэтому плитки из разных потоков не конкурируют за одну ячейку.
+ * Итерации считаются логические (MAX_ITER минус оставшиеся), независимо от того, сколько из них ядро пропустило.
+ *
+ * Время плитки попадает в корзину b, если оно лежит в [2^b, 2^(b+1)) микросекунд (корзина 0 — меньше 2 мкс,
+ * последняя — все, что дольше).
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+    public static final String OBJECT_NAME = "Mandelbrot:type=RenderMetrics"; // Имя MBean
+    private static final int LATENCY_BUCKETS = 24; // Количество корзин гистограммы времени плиток
+
+    private static final RenderMetrics shared = new RenderMetrics(); // Метрики процесса
+
+    private final LongAdder keysCompleted = new LongAdder(); // Сохраненные ключи
+    private final LongAdder attempts = new LongAdder(); // Выбранные виды
+    private final LongAdder rejectedByProbe = new LongAdder(); // Виды, отклоненные пробным проходом
+    private final LongAdder rejectedDescent = new LongAdder(); // Виды, для которых не удался спуск к границе множества
+    private final LongAdder rejectedBlack = new LongAdder(); // Отказы из-за черных пикселей
+    private final LongAdder rejectedColors = new LongAdder(); // Отказы из-за количества цветов
+    private final LongAdder rejectedDominance = new LongAdder(); // Отказы из-за самого частого цвета
+    private final LongAdder abortedFrames = new LongAdder(); // Кадры, рендеринг которых остановлен досрочно
+    private final LongAdder pixels = new LongAdder(); // Посчитанные пиксели
+    private final LongAdder iterations = new LongAdder(); // Логические итерации
+    private final LongAdder tileNanos = new LongAdder(); // Суммарное время плиток
+    private final AtomicLongArray tileLatency = new AtomicLongArray(LATENCY_BUCKETS); // Гистограмма времени плиток
+    private final Map<String, Collection<?>> queues = new ConcurrentSkipListMap<>(); // Очереди конвейера по именам
+    private final Rate pixelRate = new Rate(); // Скорость по пикселям
+    private final Rate iterationRate = new Rate(); // Скорость по итерациям
+    private boolean registered; // MBean зарегистрирован
+
+    /**
+     * Скорость роста счетчика между двумя чтениями, не чаще раза в секунду.
+     */
+    private static class Rate {
+        private long lastTime = System.nanoTime(); // Время предыдущего замера
+        private long lastTotal; // Значение счетчика при предыдущем замере
+        private double rate; // Последняя вычисленная скорость
+
+        synchronized double update(long total) {
+            long now = System.nanoTime();
+            if (now - lastTime >= 1_000_000_000L) {
+                rate = (total - lastTotal) / ((now - lastTime) / 1e9);
+                lastTime = now;
+                lastTotal = total;
+            }
+            return rate;
+        }
+
+        synchronized void reset() {
+            lastTime = System.nanoTime();
+            lastTotal = 0;
+            rate = 0;
+        }
+    }
+
+    /**
+     * Возвращает метрики процесса.
+     *
+     * @return Общий экземпляр метрик.
+     */
+    public static RenderMetrics getShared() {
+        return shared;
+    }
+
+    /**
+     * Регистрирует общий экземпляр в платформенном MBeanServer. Повторные вызовы ничего не делают.
+     */
+    public static synchronized void register() {
+        if (shared.registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(shared, new ObjectName(OBJECT_NAME));
+            shared.registered = true;
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать метрики JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Учитывает посчитанную плитку.
+     *
+     * @param nanos Время рендеринга плитки.
+     * @param pixels Количество посчитанных пикселей.
+     * @param iterations Количество логических итераций.
+     */
+    public void recordTile(long nanos, long pixels, long iterations) {
+        this.pixels.add(pixels);
+        this.iterations.add(iterations);
+        tileNanos.add(nanos);
+        long micros = nanos / 1000;
+        int bucket = micros < 2 ? 0 : Math.min(LATENCY_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        tileLatency.incrementAndGet(bucket);
+    }
+
+    /**
+     * Учитывает выбранный вид.
+     */
+    public void recordAttempt() {
+        attempts.increment();
+    }
+
+    /**
+     * Учитывает вид, отклоненный пробным проходом.
+     */
+    public void recordProbeRejection() {
+        rejectedByProbe.increment();
+    }
+
+    /**
+     * Учитывает вид, для которого не удался спуск к границе множества в режиме глубокого масштаба.
+     */
+    public void recordDescentRejection() {
+        rejectedDescent.increment();
+    }
+
+    /**
+     * Учитывает результат точной проверки разнообразия.
+     *
+     * @param field Проверенное поле итераций.
+     * @param rejection Причина отказа или null, если кадр принят.
+     */
+    public void recordVerdict(IterationField field, DiversityCheck.Rejection rejection) {
+        if (field.isAborted()) {
+            abortedFrames.increment();
+        }
+        if (rejection == null) {
+            return;
+        }
+        switch (rejection) {
+            case BLACK:
+                rejectedBlack.increment();
+                break;
+            case COLORS:
+                rejectedColors.increment();
+                break;
+            case DOMINANCE:
+                rejectedDominance.increment();
+                break;
+        }
+    }
+
+    /**
+     * Учитывает сохраненный ключ.
+     */
+    public void recordKeyCompleted() {
+        keysCompleted.increment();
+    }
+
+    /**
+     * Добавляет очередь конвейера в метрику глубины очередей.
+     *
+     * @param name Имя очереди.
+     * @param queue Очередь.
+     */
+    public void registerQueue(String name, Collection<?> queue) {
+        queues.put(name, queue);
+    }
+
+    /**
+     * Убирает очередь конвейера из метрики глубины очередей.
+     *
+     * @param name Имя очереди.
+     */
+    public void unregisterQueue(String name) {
+        queues.remove(name);
+    }
+
+    @Override
+    public long getKeysCompleted() {
+        return keysCompleted.sum();
+    }
+
+    @Override
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    @Override
+    public long getRejectedByProbe() {
+        return rejectedByProbe.sum();
+    }
+
+    @Override
+    public long getRejectedDescent() {
+        return rejectedDescent.sum();
+    }
+
+    @Override
+    public long getRejectedBlack() {
+        return rejectedBlack.sum();
+    }
+
+    @Override
+    public long getRejectedColors() {
+        return rejectedColors.sum();
+    }
+
+    @Override
+    public long getRejectedDominance() {
+        return rejectedDominance.sum();
+    }
+
+    @Override
+    public long getAbortedFrames() {
+        return abortedFrames.sum();
+    }
+
+    @Override
+    public long getPixels() {
+        return pixels.sum();
+    }
+
+    @Override
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    @Override
+    public double getPixelsPerSecond() {
+        return pixelRate.update(pixels.sum());
+    }
+
+    @Override
+    public double getIterationsPerSecond() {
+        return iterationRate.update(iterations.sum());
+    }
+
+    @Override
+    public long getTiles() {
+        long tiles = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            tiles += tileLatency.get(i);
+        }
+        return tiles;
+    }
+
+    @Override
+    public double getMeanTileMillis() {
+        long tiles = getTiles();
+        return tiles == 0 ? 0 : tileNanos.sum() / 1e6 / tiles;
+    }
+
+    @Override
+    public long[] getTileLatencyHistogram() {
+        long[] histogram = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            histogram[i] = tileLatency.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long[] getTileLatencyBucketMicros() {
+        long[] bounds = new long[LATENCY_BUCKETS];
+        for (int i = 1; i < LATENCY_BUCKETS; i++) {
+            bounds[i] = 1L << i;
+        }
+        return bounds;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Collection<?> queue : queues.values()) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    @Override
+    public String getQueueDepths() {
+        StringBuilder depths = new StringBuilder();
+        for (Map.Entry<String, Collection<?>> queue : queues.entrySet()) {
+            if (depths.length() > 0) {
+                depths.append(", ");
+            }
+            depths.append(queue.getKey()).append('=').append(queue.getValue().size());
+        }
+        return depths.toString();
+    }
+
+    @Override
+    public long getPoolQueuedTasks() {
+        var pool = RenderScheduler.getShared().getPool();
+        return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[]{keysCompleted, attempts, rejectedByProbe, rejectedDescent,
+                rejectedBlack, rejectedColors, rejectedDominance, abortedFrames, pixels, iterations, tileNanos}) {
+            counter.reset();
+        }
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            tileLatency.set(i, 0);
+        }
+        pixelRate.reset();
+        iterationRate.reset();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+/**
+ * Интерфейс RenderMetricsMBean описывает метрики генерации ключей, доступные по JMX (jconsole, VisualVM и т.п.)
+ * под именем Mandelbrot:type=RenderMetrics.
+ */
+public interface RenderMetricsMBean {
+    long getKeysCompleted();
+
+    long getAttempts();
+
+    long getRejectedByProbe();
+
+    long getRejectedDescent();
+
+    long getRejectedBlack();
+
+    long getRejectedColors();
+
+    long getRejectedDominance();
+
+    long getAbortedFrames();
+
+    long getPixels();
+
+    long getIterations();
+
+    double getPixelsPerSecond();
+
+    double getIterationsPerSecond();
+
+    long getTiles();
+
+    double getMeanTileMillis();
+
+    long[] getTileLatencyHistogram();
+
+    long[] getTileLatencyBucketMicros();
+
+    int getQueueDepth();
+
+    String getQueueDepths();
+
+    long getPoolQueuedTasks();
+
+    void reset();
+}
\ No newline at end of file
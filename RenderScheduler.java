@@ -0,0 +1,160 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Класс RenderScheduler распределяет рендеринг кадров множества Мандельброта по постоянному пулу потоков
+ * с перехватом работы (ForkJoinPool). Кадр разбивается на квадратные плитки, каждая плитка рендерится
+ * отдельной задачей, а по завершении всех плиток возвращается future кадра.
+ * Пул создаётся один раз и живёт всё время работы программы, поэтому не пересоздаётся на каждую попытку.
+ */
+public class RenderScheduler {
+    public static final int DEFAULT_TILE_SIZE = 32; // Размер плитки по умолчанию
+
+    private static RenderScheduler shared; // Общий планировщик на всё время работы
+
+    private final ForkJoinPool pool; // Пул потоков с перехватом работы
+    private final int tileSize; // Размер стороны плитки в пикселях
+
+    /**
+     * Конструктор класса RenderScheduler.
+     *
+     * @param parallelism Количество рабочих потоков.
+     * @param tileSize Размер стороны плитки в пикселях.
+     */
+    public RenderScheduler(int parallelism, int tileSize) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Возвращает общий планировщик, использующий все доступные ядра.
+     *
+     * @return Общий планировщик рендеринга.
+     */
+    public static synchronized RenderScheduler getShared() {
+        if (shared == null) {
+            shared = new RenderScheduler(Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_SIZE);
+        }
+        return shared;
+    }
+
+    /**
+     * Возвращает пул потоков планировщика.
+     *
+     * @return Пул потоков.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Возвращает размер стороны плитки.
+     *
+     * @return Размер плитки в пикселях.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Запускает рендеринг кадра по плиткам и сразу возвращает управление.
+     *
+     * @param field Поле итераций для записи результатов.
+     * @return Future, завершающийся этим же полем после рендеринга всех плиток.
+     */
+    public CompletableFuture<IterationField> render(IterationField field) {
+        return render(field, EscapeKernel.CLASSIC);
+    }
+
+    /**
+     * Запускает рендеринг кадра по плиткам выбранным ядром и сразу возвращает управление.
+     *
+     * @param field Поле итераций для записи результатов; параметры кадра берутся из него.
+     * @param kernel Ядро подсчета времени выхода.
+     * @return Future, завершающийся этим же полем после рендеринга всех плиток; гистограмма поля уже собрана плитками.
+     */
+    public CompletableFuture<IterationField> render(IterationField field, EscapeKernel kernel) {
+        return render(field, kernel, false);
+    }
+
+    /**
+     * Запускает рендеринг кадра по плиткам выбранным ядром и сразу возвращает управление.
+     * Плитки отправляются в пул в разнесенном по кадру порядке (см. spreadOrder), поэтому уже первые
+     * плитки дают представление обо всем кадре. При досрочной остановке рендеринг прекращается, как только
+     * посчитанная часть кадра гарантирует отказ проверки разнообразия: еще не начатые плитки завершаются сразу,
+     * не посчитав ни одной строки, начатые выходят после текущей строки, а поле помечается как недорисованное
+     * (IterationField.markAborted). Future кадра завершается только после выхода всех плиток, поэтому поле
+     * можно сразу переиспользовать.
+     *
+     * @param field Поле итераций для записи результатов; параметры кадра берутся из него.
+     * @param kernel Ядро подсчета времени выхода.
+     * @param earlyAbort true, чтобы останавливать рендеринг при гарантированном отказе.
+     * @return Future, завершающийся этим же полем после рендеринга или досрочной остановки.
+     */
+    public CompletableFuture<IterationField> render(IterationField field, EscapeKernel kernel, boolean earlyAbort) {
+        MandelbrotParams params = field.getParams();
+        int columns = (params.width + tileSize - 1) / tileSize;
+        int rows = (params.height + tileSize - 1) / tileSize;
+        FrameHistogram histogram = new FrameHistogram(params.MAX_ITER, params.width * params.height, earlyAbort);
+        CompletableFuture<?>[] tiles = new CompletableFuture<?>[columns * rows];
+        int[] order = spreadOrder(columns, rows);
+        for (int k = 0; k < order.length; k++) {
+            int x = order[k] % columns * tileSize;
+            int y = order[k] / columns * tileSize;
+            MandelbrotThread tile = new MandelbrotThread(x, y, Math.min(x + tileSize, params.width),
+                    Math.min(y + tileSize, params.height), field, kernel, histogram);
+            tiles[k] = CompletableFuture.runAsync(tile, pool);
+        }
+        return CompletableFuture.allOf(tiles).handle((v, e) -> {
+            if (histogram.isRejected()) {
+                field.markAborted(histogram.getRenderedPixels(), histogram.getRejection());
+            } else if (e != null) {
+                throw new CompletionException(e);
+            } else {
+                field.setHistogram(histogram.getHistogram());
+            }
+            return field;
+        });
+    }
+
+    /**
+     * Упорядочивает плитки так, чтобы каждая следующая лежала как можно дальше от уже отправленных:
+     * плитки сортируются по чередованию битов обращенных номеров столбца и строки (порядок, как при обходе
+     * дерева квадрантов в ширину). Первые четыре плитки — углы четвертей кадра, следующие делят их пополам и т.д.
+     *
+     * @param columns Количество столбцов плиток.
+     * @param rows Количество строк плиток.
+     * @return Номера плиток (строка * columns + столбец) в порядке отправки.
+     */
+    static int[] spreadOrder(int columns, int rows) {
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(columns, rows) - 1));
+        long[] keys = new long[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int rx = Integer.reverse(column) >>> (32 - bits);
+                int ry = Integer.reverse(row) >>> (32 - bits);
+                long morton = 0;
+                for (int b = 0; b < bits; b++) {
+                    morton |= (long) ((rx >>> b) & 1) << (2 * b) | (long) ((ry >>> b) & 1) << (2 * b + 1);
+                }
+                int index = row * columns + column;
+                keys[index] = morton << 32 | index;
+            }
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Останавливает пул потоков планировщика.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,270 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Класс RunManifest — журнал прогона генерации ключей (manifest.log в папке ключей), позволяющий продолжить
+ * прерванный прогон. Перед записью ключа в журнал дописывается строка PENDING с именем файла, ключ пишется во
+ * временный файл, перед переносом дописывается строка MOVING с полной записью о ключе, файл атомарно переносится
+ * на свое имя, и только после этого дописывается сама запись: номер ключа, параметры кадра, имя файла, размер
+ * и SHA-256. Каждая строка записывается одним вызовом и сбрасывается на диск, оборванная последняя строка при
+ * чтении отбрасывается.
+ *
+ * В режиме продолжения каждый файл из журнала проверяется по размеру и контрольной сумме, поврежденные и пропавшие
+ * ключи генерируются заново. Ключ, перенесенный перед сбоем, но не дописанный в журнал (есть только строка MOVING),
+ * принимается, если его размер и контрольная сумма совпадают с записью. Удаляются только временные файлы из строк
+ * PENDING. Новый прогон не удаляет ключи: старый журнал переименовывается в архивное имя вместе с датой.
+ */
+public class RunManifest {
+    public static final String FILE_NAME = "manifest.log"; // Имя журнала в папке ключей
+    private static final String TEMP_SUFFIX = ".tmp"; // Расширение временных файлов
+    private static final String PENDING = "PENDING"; // Метка строки о ключе, который пишется во временный файл
+    private static final String MOVING = "MOVING"; // Метка строки о ключе, который переносится на свое имя
+
+    private final Path dir; // Папка ключей
+    private final Path log; // Файл журнала
+    private final Map<Integer, Entry> completed = new TreeMap<>(); // Готовые ключи по номерам
+
+    /**
+     * Запись журнала о готовом ключе.
+     */
+    public static class Entry {
+        public final int index; // Номер ключа
+        public final MandelbrotParams params; // Параметры кадра
+        public final String fileName; // Имя файла в папке ключей
+        public final long size; // Размер файла в байтах
+        public final String checksum; // SHA-256 файла в шестнадцатеричном виде
+
+        Entry(int index, MandelbrotParams params, String fileName, long size, String checksum) {
+            this.index = index;
+            this.params = params;
+            this.fileName = fileName;
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        String toLine() {
+            return index + "\t" + params.width + "\t" + params.height + "\t" + params.ZOOM + "\t" + params.MAX_ITER
+                    + "\t" + params.offsetX + "\t" + params.offsetY + "\t" + fileName + "\t" + size + "\t" + checksum;
+        }
+
+        static Entry parse(String line) {
+            String[] parts = line.split("\t");
+            if (parts.length != 10 || parts[9].length() != 64) {
+                return null;
+            }
+            try {
+                MandelbrotParams params = new MandelbrotParams(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                        Double.parseDouble(parts[3]), Integer.parseInt(parts[4]), Double.parseDouble(parts[5]),
+                        Double.parseDouble(parts[6]));
+                return new Entry(Integer.parseInt(parts[0]), params, parts[7], Long.parseLong(parts[8]), parts[9]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private RunManifest(Path dir) {
+        this.dir = dir;
+        this.log = dir.resolve(FILE_NAME);
+    }
+
+    /**
+     * Открывает журнал прогона.
+     *
+     * @param dir Папка ключей.
+     * @param resume true, чтобы продолжить прогон по существующему журналу; false, чтобы начать журнал заново
+     *               (старый журнал сохраняется под архивным именем, ключи не удаляются).
+     * @return Журнал прогона.
+     * @throws IOException Если журнал не удалось прочитать, переименовать или создать.
+     */
+    public static RunManifest open(Path dir, boolean resume) throws IOException {
+        Files.createDirectories(dir);
+        RunManifest manifest = new RunManifest(dir);
+        if (!Files.exists(manifest.log)) {
+            return manifest;
+        }
+
+        Set<String> pending = new TreeSet<>(); // Ключи, которые писались во временные файлы
+        Map<String, Entry> moving = new TreeMap<>(); // Ключи, перенос которых не отмечен в журнале
+        try (BufferedReader reader = Files.newBufferedReader(manifest.log, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                if (entry != null) {
+                    manifest.completed.put(entry.index, entry); // Последняя запись о номере главнее
+                    moving.remove(entry.fileName);
+                } else if (line.startsWith(PENDING + "\t")) {
+                    pending.add(line.substring(PENDING.length() + 1));
+                } else if (line.startsWith(MOVING + "\t")) {
+                    entry = Entry.parse(line.substring(MOVING.length() + 1));
+                    if (entry != null) {
+                        moving.put(entry.fileName, entry);
+                    }
+                }
+            }
+        }
+        for (String fileName : pending) {
+            Files.deleteIfExists(manifest.tempPath(fileName)); // Временный файл создан этим журналом
+        }
+        if (!resume) {
+            Path archive = dir.resolve("manifest-" + System.currentTimeMillis() + ".log");
+            Files.move(manifest.log, archive);
+            manifest.completed.clear();
+            System.out.println("Журнал прошлого прогона сохранен как " + archive.getFileName()
+                    + ", его ключи не удалены");
+            return manifest;
+        }
+
+        int recovered = 0;
+        for (Entry entry : moving.values()) {
+            Path file = dir.resolve(entry.fileName);
+            if (!manifest.completed.containsKey(entry.index) && Files.exists(file)
+                    && Files.size(file) == entry.size && checksum(file).equals(entry.checksum)) {
+                manifest.append(entry.toLine()); // Перенос успел завершиться, дописываем запись
+                manifest.completed.put(entry.index, entry);
+                recovered++;
+            }
+        }
+        int damaged = 0;
+        for (Entry entry : new ArrayList<>(manifest.completed.values())) {
+            Path file = dir.resolve(entry.fileName);
+            if (!Files.exists(file) || Files.size(file) != entry.size || !checksum(file).equals(entry.checksum)) {
+                Files.deleteIfExists(file); // Файл записан этим прогоном, поврежденную копию можно удалить
+                manifest.completed.remove(entry.index);
+                damaged++;
+            }
+        }
+        System.out.println("Продолжение прогона: готово ключей " + manifest.completed.size()
+                + ", повреждено или пропало " + damaged + ", восстановлено после сбоя при переносе " + recovered);
+        return manifest;
+    }
+
+    /**
+     * Проверяет, готов ли ключ с указанным номером.
+     *
+     * @param index Номер ключа.
+     * @return true, если ключ записан и прошел проверку.
+     */
+    public synchronized boolean isCompleted(int index) {
+        return completed.containsKey(index);
+    }
+
+    /**
+     * Возвращает номера ключей из [0, count), которые еще нужно сгенерировать.
+     *
+     * @param count Количество ключей в прогоне.
+     * @return Номера недостающих ключей по возрастанию.
+     */
+    public synchronized int[] pendingIndices(int count) {
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!completed.containsKey(i)) {
+                pending.add(i);
+            }
+        }
+        return pending.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Отмечает в журнале начало записи ключа и возвращает путь временного файла, в который нужно записать ключ
+     * перед commit.
+     *
+     * @param fileName Имя файла ключа.
+     * @return Путь временного файла в папке ключей.
+     * @throws IOException Если журнал не удалось дописать.
+     */
+    public Path tempFile(String fileName) throws IOException {
+        append(PENDING + "\t" + fileName);
+        return tempPath(fileName);
+    }
+
+    private Path tempPath(String fileName) {
+        return dir.resolve(fileName + TEMP_SUFFIX);
+    }
+
+    /**
+     * Фиксирует записанный ключ: сбрасывает временный файл на диск, дописывает в журнал запись о переносе,
+     * атомарно переносит файл на свое имя и дописывает запись о готовом ключе.
+     *
+     * @param index Номер ключа.
+     * @param params Параметры кадра.
+     * @param fileName Имя файла ключа.
+     * @throws IOException Если файл не удалось перенести или журнал не удалось дописать.
+     */
+    public void commit(int index, MandelbrotParams params, String fileName) throws IOException {
+        Path temp = tempPath(fileName);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Entry entry = new Entry(index, params, fileName, Files.size(temp), checksum(temp));
+        append(MOVING + "\t" + entry.toLine());
+        Files.move(temp, dir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            append(entry.toLine());
+            completed.put(index, entry);
+        }
+    }
+
+    /**
+     * Дописывает строку в журнал одним вызовом и сбрасывает журнал на диск.
+     *
+     * @param text Строка без перевода строки.
+     * @throws IOException Если журнал не удалось дописать.
+     */
+    private synchronized void append(String text) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(true);
+        }
+    }
+
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Вычисляет SHA-256 файла.
+     *
+     * @param file Путь к файлу.
+     * @return Хэш в шестнадцатеричном виде.
+     * @throws IOException Если файл не удалось прочитать.
+     */
+    public static String checksum(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
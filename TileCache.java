@@ -0,0 +1,101 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Класс TileCache — кэш готовых плиток интерактивного просмотрщика, как у сервера картографических плиток.
+ * Плитка TILE_SIZE x TILE_SIZE лежит на решетке мировых пикселей своего уровня масштабирования: пиксель (X, Y)
+ * соответствует точке (X / ZOOM, Y / ZOOM), плитка (tx, ty) покрывает X из [tx * TILE_SIZE, (tx + 1) * TILE_SIZE).
+ * Поэтому при сдвиге вида и при возврате на уже посещенный уровень плитки совпадают точно и берутся из кэша.
+ * Уровень определяется точным значением ZOOM (его битами), так что просмотрщик должен вычислять ZOOM
+ * одинаково для одного и того же уровня. Объем кэша ограничен по памяти, вытесняются давно не использованные плитки.
+ */
+public class TileCache {
+    public static final int TILE_SIZE = 64; // Размер стороны плитки в пикселях
+
+    private final long maxBytes; // Допустимый объем плиток в байтах
+    private final Map<Key, int[]> tiles = new LinkedHashMap<>(256, 0.75f, true); // Плитки в порядке обращений
+    private long bytes; // Текущий объем плиток в байтах
+    private long hits; // Попадания
+    private long misses; // Промахи
+
+    /**
+     * Ключ плитки: уровень масштабирования, MAX_ITER и номер плитки на решетке уровня.
+     */
+    public static class Key {
+        final long zoomBits; // Биты ZOOM уровня
+        final int MAX_ITER; // Максимальное количество итераций
+        final long tx; // Номер плитки по оси X
+        final long ty; // Номер плитки по оси Y
+
+        public Key(double ZOOM, int MAX_ITER, long tx, long ty) {
+            this.zoomBits = Double.doubleToLongBits(ZOOM);
+            this.MAX_ITER = MAX_ITER;
+            this.tx = tx;
+            this.ty = ty;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return zoomBits == key.zoomBits && MAX_ITER == key.MAX_ITER && tx == key.tx && ty == key.ty;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(zoomBits, MAX_ITER, tx, ty);
+        }
+    }
+
+    /**
+     * Конструктор класса TileCache.
+     *
+     * @param maxBytes Допустимый объем плиток в байтах.
+     */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Возвращает плитку из кэша.
+     *
+     * @param key Ключ плитки.
+     * @return Цвета плитки по строкам или null, если плитки нет.
+     */
+    public synchronized int[] get(Key key) {
+        int[] tile = tiles.get(key);
+        if (tile != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return tile;
+    }
+
+    /**
+     * Кладет плитку в кэш и вытесняет давно не использованные плитки сверх допустимого объема.
+     *
+     * @param key Ключ плитки.
+     * @param tile Цвета плитки по строкам.
+     */
+    public synchronized void put(Key key, int[] tile) {
+        int[] old = tiles.put(key, tile);
+        bytes += 4L * tile.length - (old != null ? 4L * old.length : 0);
+        var eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= 4L * eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Выводит в консоль статистику кэша.
+     */
+    public synchronized void printReport() {
+        System.out.printf("Кэш плиток: %d плиток (%d КБ), попаданий %d, промахов %d%n",
+                tiles.size(), bytes / 1024, hits, misses);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR вокруг рендеринга одной плитки поля итераций (см. MandelbrotThread).
+ */
+@Name("mandelbrot.TileRender")
+@Label("Tile Render")
+@Category({"Mandelbrot", "Rendering"})
+@Description("Рендеринг одной плитки кадра")
+public class TileRenderEvent extends Event {
+    @Label("Start X")
+    int startX; // Левая граница плитки
+
+    @Label("Start Y")
+    int startY; // Верхняя граница плитки
+
+    @Label("Width")
+    int width; // Ширина плитки
+
+    @Label("Height")
+    int height; // Высота плитки
+
+    @Label("Max Iterations")
+    int maxIter; // MAX_ITER кадра
+
+    @Label("Pixels")
+    long pixels; // Посчитанные пиксели
+
+    @Label("Iterations")
+    long iterations; // Логические итерации
+
+    @Label("Aborted")
+    boolean aborted; // Плитка прервана досрочной остановкой кадра
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Класс VectorKernel реализует векторное ядро подсчета времени выхода на основе jdk.incubator.vector.
+ * Точки строки обрабатываются пачками ширины вектора (4 точки для AVX2, 8 для AVX-512): итерации идут для всех
+ * точек пачки одновременно, а точки, уже покинувшие круг радиуса 2, исключаются маской.
+ * Операции выполняются в том же порядке, что и в классическом цикле, поэтому результат побитово совпадает с ним.
+ *
+ * Внутренние точки отсекаются так же, как в InteriorCullingKernel с нулевым допуском: точки главной кардиоиды и
+ * круга периода 2 исключаются маской до начала итераций, а точки, орбита которых точно повторилась (опорная точка
+ * обновляется через удваивающиеся интервалы, общие для всех точек пачки), исключаются с результатом 0. Иначе
+ * внутренние точки пачки крутились бы до MAX_ITER.
+ *
+ * Класс использует jdk.incubator.vector, поэтому все дерево исходников компилируется и запускается с флагом
+ * --add-modules jdk.incubator.vector (javac --add-modules jdk.incubator.vector *.java).
+ */
+public class VectorKernel implements EscapeKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED; // Предпочтительная ширина вектора
+    private static final EscapeKernel SCALAR = new InteriorCullingKernel(); // Ядро для хвоста строки и одиночных точек
+
+    /**
+     * Возвращает количество точек, обрабатываемых за одну векторную операцию.
+     *
+     * @return Ширина вектора в элементах double.
+     */
+    public static int laneCount() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int escape(double cX, double cY, int MAX_ITER) {
+        return SCALAR.escape(cX, cY, MAX_ITER);
+    }
+
+    @Override
+    public void escapeRow(double[] cX, double cY, int MAX_ITER, int[] out) {
+        int lanes = SPECIES.length();
+        int upperBound = SPECIES.loopBound(cX.length);
+        DoubleVector four = DoubleVector.broadcast(SPECIES, 4.0);
+        DoubleVector vectorCY = DoubleVector.broadcast(SPECIES, cY);
+        double y2 = cY * cY;
+        double[] remaining = new double[lanes];
+
+        int x = 0;
+        for (; x < upperBound; x += lanes) {
+            DoubleVector vectorCX = DoubleVector.fromArray(SPECIES, cX, x);
+            DoubleVector zx = DoubleVector.zero(SPECIES);
+            DoubleVector zy = DoubleVector.zero(SPECIES);
+            DoubleVector checkX = DoubleVector.zero(SPECIES); // Опорная точка орбиты для обнаружения цикла
+            DoubleVector checkY = DoubleVector.zero(SPECIES);
+            int checkPeriod = 8; // Длина текущего интервала между обновлениями опорной точки
+            int steps = 0;
+
+            // Проверка кардиоиды и круга периода 2 в том же порядке операций, что и в InteriorCullingKernel
+            DoubleVector shifted = vectorCX.sub(0.25);
+            DoubleVector q = shifted.mul(shifted).add(y2);
+            DoubleVector bulb = vectorCX.add(1.0);
+            VectorMask<Double> interior = q.mul(q.add(shifted)).compare(VectorOperators.LT, 0.25 * y2)
+                    .or(bulb.mul(bulb).add(y2).compare(VectorOperators.LT, 0.0625));
+            DoubleVector iterations = DoubleVector.broadcast(SPECIES, MAX_ITER).blend(0.0, interior);
+            VectorMask<Double> active = interior.not();
+
+            for (int i = MAX_ITER; i > 0; i--) {
+                DoubleVector zx2 = zx.mul(zx);
+                DoubleVector zy2 = zy.mul(zy);
+                active = active.and(zx2.add(zy2).compare(VectorOperators.LT, four));
+                if (!active.anyTrue()) {
+                    break;
+                }
+                DoubleVector tmp = zx2.sub(zy2).add(vectorCX);
+                zy = zx.mul(2.0).mul(zy).add(vectorCY);
+                zx = tmp;
+                iterations = iterations.lanewise(VectorOperators.SUB, 1.0, active);
+
+                // Орбита зациклилась и никогда не покинет круг
+                VectorMask<Double> cycled = active.and(zx.compare(VectorOperators.EQ, checkX))
+                        .and(zy.compare(VectorOperators.EQ, checkY));
+                iterations = iterations.blend(0.0, cycled);
+                active = active.andNot(cycled);
+                if (++steps == checkPeriod) {
+                    steps = 0;
+                    checkPeriod <<= 1;
+                    checkX = zx;
+                    checkY = zy;
+                }
+            }
+
+            iterations.intoArray(remaining, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                out[x + lane] = (int) remaining[lane];
+            }
+        }
+
+        for (; x < cX.length; x++) {
+            out[x] = SCALAR.escape(cX[x], cY, MAX_ITER);
+        }
+    }
+}
\ No newline at end of file
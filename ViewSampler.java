@@ -0,0 +1,42 @@
+import java.util.Random;
+
+/**
+ * Класс ViewSampler выбирает случайный вид для ключевого изображения: MAX_ITER, смещения offsetX, offsetY и ZOOM.
+ * Класс не зависит от Swing и используется как окном Mandelbrot, так и пакетным генератором.
+ */
+public class ViewSampler {
+    public static final double OFFSET_LIMIT = 0.9998; // Смещения выбираются из [-OFFSET_LIMIT, OFFSET_LIMIT]
+
+    private final Random random; // Источник случайных чисел
+
+    /**
+     * Конструктор класса ViewSampler с несидированным генератором случайных чисел.
+     */
+    public ViewSampler() {
+        this(new Random());
+    }
+
+    /**
+     * Конструктор класса ViewSampler.
+     *
+     * @param random Источник случайных чисел.
+     */
+    public ViewSampler(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Генерирует случайные значения для параметров MAX_ITER, offsetX, offsetY и ZOOM.
+     *
+     * @param width Ширина изображения.
+     * @param height Высота изображения.
+     * @return Параметры случайного вида.
+     */
+    public MandelbrotParams next(int width, int height) {
+        int MAX_ITER = 500 + (random.nextInt(91) * 8); // 91 для диапазона от 0 до 90, чтобы получить 500, 508 и до 1220
+        double offsetX = -OFFSET_LIMIT + (random.nextDouble() * (OFFSET_LIMIT - -OFFSET_LIMIT));
+        double offsetY = -OFFSET_LIMIT + (random.nextDouble() * (OFFSET_LIMIT - -OFFSET_LIMIT));
+        double ZOOM = 100000 + (random.nextInt(44) * 1000);
+        return new MandelbrotParams(width, height, ZOOM, MAX_ITER, offsetX, offsetY);
+    }
+}
\ No newline at end of file
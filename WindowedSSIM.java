@@ -0,0 +1,163 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Класс WindowedSSIM вычисляет оконный SSIM (Wang и др., 2004) с квадратным окном window x window и шагом 1:
+ * для каждого положения окна считается локальный SSIM по средним, дисперсиям и ковариации внутри окна, а итог
+ * (MSSIM) — среднее по всем окнам. Суммы x, y, x^2, y^2 и xy по окну берутся из таблиц накопленных сумм
+ * (integral image) за четыре обращения, поэтому стоимость O(пикселей) и не зависит от размера окна.
+ *
+ * Изображение делится на полосы по BAND_ROWS строк карты, полосы считаются параллельно на пуле планировщика.
+ * Каждая полоса строит свои таблицы только по своим строкам и window - 1 строкам перекрытия, так что память
+ * ограничена размером полосы, а суммы остаются точными (long). Окно прямоугольное: гауссово окно через таблицы
+ * накопленных сумм точно не раскладывается.
+ */
+public class WindowedSSIM {
+    public static final int DEFAULT_WINDOW = 8; // Сторона окна по умолчанию
+    public static final int BAND_ROWS = 64; // Строк карты в полосе
+    private static final double C1 = 0.01 * 255 * 0.01 * 255; // Константа стабилизации средних
+    private static final double C2 = 0.03 * 255 * 0.03 * 255; // Константа стабилизации дисперсий
+
+    /**
+     * Канал, по которому считается SSIM.
+     */
+    public enum Channel {
+        RED, // Красный канал
+        GREEN, // Зеленый канал
+        BLUE, // Синий канал
+        LUMA; // Яркость (BT.601, 77R + 150G + 29B >> 8)
+
+        int value(int rgb) {
+            return switch (this) {
+                case RED -> (rgb >> 16) & 0xFF;
+                case GREEN -> (rgb >> 8) & 0xFF;
+                case BLUE -> rgb & 0xFF;
+                case LUMA -> (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF)) >> 8;
+            };
+        }
+    }
+
+    /**
+     * Результат: средний SSIM и карта локальных SSIM. Элемент карты (x, y) относится к окну с левым верхним
+     * углом в пикселе (x, y).
+     */
+    public record Result(double mean, float[] map, int mapWidth, int mapHeight) {
+        public float get(int x, int y) {
+            return map[y * mapWidth + x];
+        }
+    }
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считаются полосы
+    private final int window; // Сторона окна в пикселях
+    private final Channel channel; // Канал сравнения
+
+    /**
+     * Конструктор класса WindowedSSIM.
+     *
+     * @param scheduler Планировщик, на пуле которого считаются полосы.
+     * @param window Сторона окна в пикселях.
+     * @param channel Канал сравнения.
+     */
+    public WindowedSSIM(RenderScheduler scheduler, int window, Channel channel) {
+        this.scheduler = scheduler;
+        this.window = window;
+        this.channel = channel;
+    }
+
+    /**
+     * Вычисляет оконный SSIM двух изображений одного размера.
+     *
+     * @param img1 Первое изображение.
+     * @param img2 Второе изображение.
+     * @return Средний SSIM и карта локальных SSIM.
+     */
+    public Result compute(BufferedImage img1, BufferedImage img2) {
+        PairMetrics.Raster r1 = PairMetrics.raster(img1);
+        PairMetrics.Raster r2 = PairMetrics.raster(img2);
+        int width = r1.width();
+        int height = r1.height();
+        if (r2.width() != width || r2.height() != height) {
+            throw new IllegalArgumentException("Изображения должны быть одного размера");
+        }
+        if (width < window || height < window) {
+            throw new IllegalArgumentException("Изображение меньше окна " + window + "x" + window);
+        }
+        int mapWidth = width - window + 1;
+        int mapHeight = height - window + 1;
+        float[] map = new float[mapWidth * mapHeight];
+
+        List<CompletableFuture<Double>> bands = new ArrayList<>();
+        for (int from = 0; from < mapHeight; from += BAND_ROWS) {
+            int start = from;
+            int end = Math.min(from + BAND_ROWS, mapHeight);
+            bands.add(CompletableFuture.supplyAsync(() -> computeBand(r1, r2, start, end, map, mapWidth),
+                    scheduler.getPool()));
+        }
+        double sum = 0;
+        for (CompletableFuture<Double> band : bands) {
+            sum += band.join();
+        }
+        return new Result(sum / map.length, map, mapWidth, mapHeight);
+    }
+
+    /**
+     * Заполняет строки карты [start, end) и возвращает сумму их значений.
+     */
+    private double computeBand(PairMetrics.Raster r1, PairMetrics.Raster r2, int start, int end, float[] map,
+                               int mapWidth) {
+        int width = r1.width();
+        int rows = end - start + window - 1; // Строки изображения, которые покрывают окна полосы
+        int stride = width + 1;
+        long[] sx = new long[(rows + 1) * stride];
+        long[] sy = new long[sx.length];
+        long[] sxx = new long[sx.length];
+        long[] syy = new long[sx.length];
+        long[] sxy = new long[sx.length];
+
+        for (int row = 0; row < rows; row++) {
+            int pixel = (start + row) * width;
+            int above = row * stride;
+            int at = above + stride;
+            long rx = 0, ry = 0, rxx = 0, ryy = 0, rxy = 0; // Суммы по текущей строке
+            for (int column = 0; column < width; column++) {
+                int x = channel.value(r1.get(pixel + column));
+                int y = channel.value(r2.get(pixel + column));
+                rx += x;
+                ry += y;
+                rxx += x * x;
+                ryy += y * y;
+                rxy += x * y;
+                sx[at + column + 1] = sx[above + column + 1] + rx;
+                sy[at + column + 1] = sy[above + column + 1] + ry;
+                sxx[at + column + 1] = sxx[above + column + 1] + rxx;
+                syy[at + column + 1] = syy[above + column + 1] + ryy;
+                sxy[at + column + 1] = sxy[above + column + 1] + rxy;
+            }
+        }
+
+        double n = (double) window * window;
+        double sum = 0;
+        for (int row = start; row < end; row++) {
+            int top = (row - start) * stride;
+            int bottom = top + window * stride;
+            for (int column = 0; column < mapWidth; column++) {
+                int a = top + column; // Углы окна в таблицах: a b / c d
+                int b = a + window;
+                int c = bottom + column;
+                int d = c + window;
+                double meanX = (sx[d] - sx[b] - sx[c] + sx[a]) / n;
+                double meanY = (sy[d] - sy[b] - sy[c] + sy[a]) / n;
+                double varX = (sxx[d] - sxx[b] - sxx[c] + sxx[a]) / n - meanX * meanX;
+                double varY = (syy[d] - syy[b] - syy[c] + syy[a]) / n - meanY * meanY;
+                double covXY = (sxy[d] - sxy[b] - sxy[c] + sxy[a]) / n - meanX * meanY;
+                double ssim = ((2 * meanX * meanY + C1) * (2 * covXY + C2))
+                        / ((meanX * meanX + meanY * meanY + C1) * (varX + varY + C2));
+                map[row * mapWidth + column] = (float) ssim;
+                sum += ssim;
+            }
+        }
+        return sum;
+    }
+}
\ No newline at end of file
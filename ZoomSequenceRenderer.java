@@ -0,0 +1,261 @@
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс ZoomSequenceRenderer рендерит последовательность кадров приближения к одной точке и сразу пишет их на диск
+ * (полем итераций в контейнер KeyImage или в PNG).
+ *
+ * Масштаб растет геометрически: за framesPerOctave кадров ровно вдвое, ZOOM кадра k вычисляется как
+ * scalb(startZoom * 2^((k mod s) / s), k / s), поэтому ZOOM кадра k + s ровно в два раза больше ZOOM кадра k.
+ * Приближение идет к целому опорному пикселю (px, py) = (width / 1.75, height / 1.75), и точка пикселя
+ * считается как c = (x - px) / ZOOM + centerX. Для пикселя кадра k + s на четном расстоянии от опорного
+ * ((x - px) и (y - py) четные) это деление дает тот же double, что и для пикселя кадра k на половинном расстоянии,
+ * поэтому его значение берется из кадра k без пересчета — это четверть пикселей каждого кадра.
+ * В параметрах кадра записывается смещение, при котором стандартное отображение MandelbrotParams совпадает с этим.
+ *
+ * Кадры, не зависящие друг от друга (k .. k + s - 1), рендерятся одновременно на пуле планировщика,
+ * но в обработке находится не больше inFlight кадров. Кадры глубже DEEP_ZOOM считаются методом теории возмущений
+ * с одной опорной орбитой в центре последовательности, общей для всех кадров; они не используют данные
+ * предыдущих кадров.
+ */
+public class ZoomSequenceRenderer {
+    public static final int DEFAULT_FRAMES_PER_OCTAVE = 8; // Кадров на удвоение масштаба по умолчанию
+    public static final double DEEP_ZOOM = 1e13; // Масштаб, с которого кадры считаются методом теории возмущений
+
+    private final RenderScheduler scheduler; // Планировщик, на пуле которого считаются строки кадров
+    private final EscapeKernel kernel; // Ядро подсчета времени выхода
+    private final int framesPerOctave; // Количество кадров, за которое масштаб удваивается
+    private final int inFlight; // Количество кадров в обработке одновременно
+    private final int writers; // Количество потоков записи на диск
+    private boolean raw = true; // Писать поле итераций в контейнер .mbk вместо PNG
+    private DeepZoomRenderer deepZoomRenderer; // Рендерер глубоких кадров, создается при первом использовании
+
+    private final AtomicLong computedPixels = new AtomicLong(); // Пиксели, посчитанные заново
+    private final AtomicLong reusedPixels = new AtomicLong(); // Пиксели, взятые из предыдущего кадра
+
+    /**
+     * Конструктор класса ZoomSequenceRenderer.
+     *
+     * @param scheduler Планировщик рендеринга.
+     * @param kernel Ядро подсчета времени выхода.
+     * @param framesPerOctave Количество кадров, за которое масштаб удваивается.
+     * @param inFlight Количество кадров в обработке одновременно (не меньше framesPerOctave, чтобы кадры шли параллельно).
+     * @param writers Количество потоков записи на диск.
+     */
+    public ZoomSequenceRenderer(RenderScheduler scheduler, EscapeKernel kernel, int framesPerOctave, int inFlight,
+                                int writers) {
+        this.scheduler = scheduler;
+        this.kernel = kernel;
+        this.framesPerOctave = framesPerOctave;
+        this.inFlight = inFlight;
+        this.writers = writers;
+    }
+
+    public void setRaw(boolean raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Вычисляет уровень масштабирования кадра последовательности.
+     *
+     * @param startZoom Масштаб первого кадра.
+     * @param k Номер кадра.
+     * @return Масштаб кадра k.
+     */
+    public double zoomAt(double startZoom, int k) {
+        return Math.scalb(startZoom * Math.pow(2, (double) (k % framesPerOctave) / framesPerOctave),
+                k / framesPerOctave);
+    }
+
+    /**
+     * Рендерит последовательность кадров и записывает их в папку. Возвращает управление после записи последнего кадра.
+     *
+     * @param width Ширина кадра.
+     * @param height Высота кадра.
+     * @param centerX Действительная часть точки, к которой идет приближение.
+     * @param centerY Мнимая часть точки, к которой идет приближение.
+     * @param startZoom Масштаб первого кадра.
+     * @param MAX_ITER Максимальное количество итераций (одно на всю последовательность).
+     * @param frames Количество кадров.
+     * @param palette Палитра для PNG.
+     * @param dir Папка для кадров.
+     * @return Пропускная способность в кадрах в секунду.
+     * @throws IOException Если папку не удалось создать или кадр не удалось записать.
+     */
+    public double render(int width, int height, BigDecimal centerX, BigDecimal centerY, double startZoom, int MAX_ITER,
+                         int frames, Palette palette, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        ReferenceOrbit orbit = null;
+        if (zoomAt(startZoom, frames - 1) >= DEEP_ZOOM) {
+            deepZoomRenderer = new DeepZoomRenderer(scheduler);
+            MathContext mc = ReferenceOrbit.precisionFor(zoomAt(startZoom, frames - 1));
+            orbit = new ReferenceOrbit(centerX, centerY, MAX_ITER, mc);
+        }
+        ReferenceOrbit sharedOrbit = orbit;
+
+        ExecutorService writerPool = Executors.newFixedThreadPool(writers, runnable -> {
+            Thread thread = new Thread(runnable, "sequence-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<CompletableFuture<IterationField>> rendered = new ArrayList<>(frames);
+        List<CompletableFuture<Void>> written = new ArrayList<>(frames);
+        try {
+            for (int k = 0; k < frames; k++) {
+                if (k >= inFlight) {
+                    written.get(k - inFlight).join();
+                }
+                int index = k;
+                double ZOOM = zoomAt(startZoom, k);
+                CompletableFuture<IterationField> source = k >= framesPerOctave && ZOOM < DEEP_ZOOM
+                        ? rendered.get(k - framesPerOctave) : CompletableFuture.completedFuture(null);
+                CompletableFuture<IterationField> frame = source.thenCompose(previous -> ZOOM < DEEP_ZOOM
+                        ? renderFrame(width, height, ZOOM, MAX_ITER, centerX.doubleValue(), centerY.doubleValue(), previous)
+                        : renderDeepFrame(width, height, ZOOM, MAX_ITER, centerX, centerY, sharedOrbit));
+                rendered.add(frame);
+                if (k >= framesPerOctave) {
+                    rendered.set(k - framesPerOctave, null); // Кадр больше не нужен как источник
+                }
+                written.add(frame.thenAcceptAsync(field -> write(field, index, palette, dir), writerPool));
+            }
+            CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            writerPool.shutdownNow();
+        }
+        return frames / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Рендерит кадр в double: пиксели на четном расстоянии от опорного берутся из кадра с вдвое меньшим масштабом,
+     * остальные считаются одним вызовом escapeRow на строку.
+     */
+    private CompletableFuture<IterationField> renderFrame(int width, int height, double ZOOM, int MAX_ITER,
+                                                          double centerX, double centerY, IterationField previous) {
+        int px = (int) (width / 1.75);
+        int py = (int) (height / 1.75);
+        IterationField field = new IterationField(new MandelbrotParams(width, height, ZOOM, MAX_ITER,
+                centerX - (px - width / 1.75) / ZOOM, centerY - (py - height / 1.75) / ZOOM));
+        short[] counts = field.getCounts();
+        short[] known = previous != null ? previous.getCounts() : null;
+        List<CompletableFuture<Void>> rows = new ArrayList<>(height);
+        for (int row = 0; row < height; row++) {
+            int y = row;
+            rows.add(CompletableFuture.runAsync(() -> {
+                boolean knownRow = known != null && ((y - py) & 1) == 0;
+                int sourceRow = (py + (y - py) / 2) * width;
+                double[] cXs = new double[width];
+                int[] xs = new int[width];
+                int n = 0;
+                for (int x = 0; x < width; x++) {
+                    if (knownRow && ((x - px) & 1) == 0) {
+                        counts[y * width + x] = known[sourceRow + px + (x - px) / 2];
+                    } else {
+                        xs[n] = x;
+                        cXs[n] = (x - px) / ZOOM + centerX;
+                        n++;
+                    }
+                }
+                double[] needed = new double[n];
+                System.arraycopy(cXs, 0, needed, 0, n);
+                int[] values = new int[n];
+                kernel.escapeRow(needed, (y - py) / ZOOM + centerY, MAX_ITER, values);
+                for (int i = 0; i < n; i++) {
+                    counts[y * width + xs[i]] = (short) values[i];
+                }
+                computedPixels.addAndGet(n);
+                reusedPixels.addAndGet(width - n);
+            }, scheduler.getPool()));
+        }
+        return CompletableFuture.allOf(rows.toArray(new CompletableFuture<?>[0])).thenApply(v -> field);
+    }
+
+    /**
+     * Рендерит глубокий кадр методом теории возмущений с общей опорной орбитой.
+     */
+    private CompletableFuture<IterationField> renderDeepFrame(int width, int height, double ZOOM, int MAX_ITER,
+                                                              BigDecimal centerX, BigDecimal centerY,
+                                                              ReferenceOrbit orbit) {
+        return CompletableFuture.supplyAsync(() -> {
+            MathContext mc = ReferenceOrbit.precisionFor(ZOOM);
+            int px = (int) (width / 1.75);
+            int py = (int) (height / 1.75);
+            BigDecimal offsetX = centerX.subtract(new BigDecimal(px - width / 1.75).divide(new BigDecimal(ZOOM), mc), mc);
+            BigDecimal offsetY = centerY.subtract(new BigDecimal(py - height / 1.75).divide(new BigDecimal(ZOOM), mc), mc);
+            MandelbrotParams params = new MandelbrotParams(width, height, ZOOM, MAX_ITER, offsetX.doubleValue(),
+                    offsetY.doubleValue());
+            int[] values = deepZoomRenderer.computeCounts(params, offsetX, offsetY, orbit);
+            IterationField field = new IterationField(params);
+            short[] counts = field.getCounts();
+            for (int i = 0; i < values.length; i++) {
+                counts[i] = (short) values[i];
+            }
+            computedPixels.addAndGet(values.length);
+            return field;
+        }, scheduler.getPool());
+    }
+
+    private void write(IterationField field, int index, Palette palette, Path dir) {
+        try {
+            if (raw) {
+                KeyImage.write(dir.resolve(field.getParams().fileName(index, KeyImage.EXTENSION)), field);
+            } else {
+                ImageIO.write(palette.toImage(field, scheduler), "png",
+                        dir.resolve(field.getParams().fileName(index)).toFile());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось записать кадр " + index, e);
+        }
+    }
+
+    /**
+     * Возвращает долю пикселей, взятых из предыдущих кадров.
+     *
+     * @return Доля переиспользованных пикселей.
+     */
+    public double getReusedShare() {
+        long total = computedPixels.get() + reusedPixels.get();
+        return total == 0 ? 0 : (double) reusedPixels.get() / total;
+    }
+
+    /**
+     * Рендерит последовательность из командной строки.
+     * Аргументы: [кадров] [папка] [png|mbk] [кадров на удвоение] [centerX] [centerY] [начальный ZOOM] [MAX_ITER].
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        Path dir = Paths.get(args.length > 1 ? args[1] : "sequence");
+        boolean raw = args.length <= 2 || !args[2].equals("png");
+        int framesPerOctave = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_FRAMES_PER_OCTAVE;
+        BigDecimal centerX = new BigDecimal(args.length > 4 ? args[4] : "-0.743643887037151");
+        BigDecimal centerY = new BigDecimal(args.length > 5 ? args[5] : "0.131825904205330");
+        double startZoom = args.length > 6 ? Double.parseDouble(args[6]) : 300;
+        int MAX_ITER = args.length > 7 ? Integer.parseInt(args[7]) : 1000;
+
+        RenderScheduler scheduler = RenderScheduler.getShared();
+        EscapeKernel kernel = KernelSelector.select(new InteriorCullingKernel());
+        ZoomSequenceRenderer renderer = new ZoomSequenceRenderer(scheduler, kernel, framesPerOctave,
+                2 * framesPerOctave, 2);
+        renderer.setRaw(raw);
+        try {
+            double fps = renderer.render(1024, 720, centerX, centerY, startZoom, MAX_ITER, frames,
+                    Palette.classic(MAX_ITER), dir);
+            System.out.printf("Кадров: %d, %.2f кадров/с, переиспользовано пикселей: %.1f%%%n", frames, fps,
+                    renderer.getReusedShare() * 100);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
\ No newline at end of file